@@ -0,0 +1,561 @@
+/**
+ * The class <b>AlphaBetaSearch</b> is a computer player
+ * that picks a move for the next player of a TicTacToe game.
+ *
+ * It runs a negamax search with alpha-beta pruning, deepening
+ * one move at a time until the game is solved or the time
+ * budget is spent.  On boards of more than FULL_WIDTH_CELLS, only
+ * the empty cells next to a mark are searched, since the cells far
+ * from every mark neither extend nor block a line.  Moves are tried
+ * in order of the best move stored in a transposition table, then
+ * of how many open lines they extend or block, each picked from the
+ * moves not tried yet, so that a cut-off does not pay for sorting the
+ * moves that are never tried.  The transposition table is keyed by the
+ * canonical hash that TicTacToe keeps up to date at each move,
+ * so that rotations and reflections of a position share their
+ * entry; the best move is stored on the canonical board.
+ */
+public class AlphaBetaSearch implements Player {
+
+  /**
+   * The score of a won game.  Wins found sooner score
+   * higher, so the score of a win is WIN minus the number
+   * of moves needed to get there.
+   */
+  static final int WIN = 1000000;
+
+  /**
+   * Any score above this value is a proven win.
+   */
+  static final int WIN_BOUND = WIN / 2;
+
+  /**
+   * The kind of score stored in the transposition table.
+   */
+  static final int EXACT = 0;
+  static final int LOWER_BOUND = 1;
+  static final int UPPER_BOUND = 2;
+
+  /**
+   * Boards of up to this many cells search every empty cell;
+   * larger boards only search the cells next to a mark.
+   */
+  static final int FULL_WIDTH_CELLS = 64;
+
+  /**
+   * The largest move and depth a table entry can hold.  The move
+   * of a larger board is not stored.
+   */
+  static final int MAX_MOVE = (1 << 28) - 1;
+  static final int MAX_DEPTH = (1 << 10) - 1;
+
+  /**
+   * The transposition table, as buckets of two slots: the
+   * first one keeps the deepest search, the second one
+   * always takes the latest.  Each slot is a key and an
+   * entry packing the score, move, depth, kind and generation.
+   */
+  private final long[] keys;
+  private final long[] entries;
+  private final int bucketMask;
+
+  /**
+   * The time allowed for each move, in nanoseconds.
+   */
+  private final long timeBudget;
+
+  /**
+   * Entries from earlier moves are replaced first.
+   */
+  private int generation;
+
+  /**
+   * The state of the search in progress, on a copy
+   * of the game reused from one move to the next.
+   */
+  private TicTacToe game;
+  private long deadline;
+  private boolean stopped;
+  private long nodes;
+  private int rootMove;
+  private int bestScore;
+
+  /**
+   * The moves of each ply of the search, grown with the
+   * depth reached so that the search does not allocate.
+   */
+  private MoveList[] moveLists = new MoveList[0];
+
+  /**
+   * The cells already in the move list being generated.
+   */
+  private boolean[] listed = new boolean[0];
+
+  /**
+   * The weight of a line holding count marks of a single player.
+   */
+  private long[] lineWeights;
+
+  /**
+   * The default computer player: a table of 2^20 slots
+   * and one second per move.
+   */
+  public AlphaBetaSearch() {
+    this(20, 1000);
+  }
+
+  /**
+   * A computer player with a transposition table of
+   * 2^tableBits slots and the provided time per move.
+   *
+   * @param tableBits the log2 of the number of slots in the table
+   * @param timeBudgetMillis the time allowed for each move, in milliseconds
+   */
+  public AlphaBetaSearch(int tableBits, long timeBudgetMillis) {
+    this.keys = new long[1 << tableBits];
+    this.entries = new long[1 << tableBits];
+    this.bucketMask = (1 << (tableBits - 1)) - 1;
+    this.timeBudget = timeBudgetMillis * 1000000L;
+  }
+
+  /**
+   * Which position should the next player play?
+   *
+   * The provided game is not modified.  If the game is over,
+   * the first empty position is returned, since there is
+   * nothing left to search for.
+   *
+   * @param current the game to play in
+   * @return the 1-based position to play, or 0 if the board is full
+   */
+  public int bestMove(TicTacToe current) {
+    int numCells = current.numCells;
+    if (current.numRounds == numCells){
+      return 0;
+    }
+    int fallback = 0;
+    for (int i = 1; i <= numCells && fallback == 0; i++){
+      if (current.valueAt(i) == CellValue.EMPTY){
+        fallback = i;
+      }
+    }
+    if (current.gameState != GameState.PLAYING){
+      return fallback;
+    }
+
+    prepare(current);
+    int best = fallback;
+    int empty = Math.min(numCells - current.numRounds, MAX_DEPTH);
+    for (int depth = 1; depth <= empty; depth++){
+      int score = negamax(depth, 0, -WIN - 1, WIN + 1);
+      if (this.stopped){
+        break;
+      }
+      best = this.rootMove;
+      this.bestScore = score;
+      //A proven win or loss will not change with a deeper search.
+      if (score > WIN_BOUND || score < -WIN_BOUND){
+        break;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Which position should the next player play, in a view of a
+   * game?  See bestMove(TicTacToe).
+   */
+  @Override
+  public int bestMove(GameView game) {
+    return bestMove(Player.searchable(game));
+  }
+
+  /**
+   * The score of the last move returned by bestMove(), from
+   * the point of view of the player who was to play.  Above
+   * WIN_BOUND is a proven win, below -WIN_BOUND a proven loss.
+   *
+   * @return the score of the last search
+   */
+  public int lastScore() {
+    return this.bestScore;
+  }
+
+  /**
+   * How many positions the last search visited.
+   *
+   * @return the number of nodes searched
+   */
+  public long lastNodes() {
+    return this.nodes;
+  }
+
+  /**
+   * Resets the search state for a new move on the provided game.
+   */
+  private void prepare(TicTacToe current) {
+    int numCells = current.numCells;
+    //the game searched is kept from move to move, so that preparing a search allocates nothing.
+    if (this.game == null){
+      this.game = new TicTacToe(current);
+    } else {
+      if (this.game.layout != current.layout){
+        this.game.reset(current.numRows, current.numColumns, current.sizeToWin);
+      }
+      this.game.copyFrom(current);
+    }
+    this.deadline = System.nanoTime() + this.timeBudget;
+    this.stopped = false;
+    this.nodes = 0;
+    this.generation = (this.generation + 1) & 3;
+
+    if (this.listed.length < numCells){
+      this.listed = new boolean[numCells];
+    }
+    if (this.lineWeights == null || this.lineWeights.length != current.sizeToWin + 1){
+      this.lineWeights = lineWeights(current.sizeToWin);
+    }
+  }
+
+  /**
+   * The weights of lines holding 0 to sizeToWin marks of a single player.
+   */
+  static long[] lineWeights(int sizeToWin) {
+    long[] weights = new long[sizeToWin + 1];
+    for (int count = 1; count <= sizeToWin; count++){
+      weights[count] = 1L << Math.min(3 * count, 40);
+    }
+    return weights;
+  }
+
+  /**
+   * The negamax search: the score of the position for the
+   * player who is to play, searching depth moves ahead.
+   */
+  private int negamax(int depth, int ply, int alpha, int beta) {
+    TicTacToe g = this.game;
+    this.nodes += 1;
+    //the clock is read at each node: on a big board, a node can take a lot longer than on a small one.
+    if (System.nanoTime() - this.deadline > 0){
+      this.stopped = true;
+    }
+    if (this.stopped){
+      return 0;
+    }
+
+    //A win can only be declared by the player who just played.
+    if (g.gameState == GameState.DRAW){
+      return 0;
+    }
+    if (g.gameState != GameState.PLAYING){
+      return -(WIN - ply);
+    }
+    if (depth == 0){
+      return evaluate();
+    }
+
+    //Probe the transposition table.
+    int symmetry = g.canonicalSymmetry();
+    long key = g.symmetryHashes[symmetry];
+    int slot = (int) key & this.bucketMask;
+    slot = slot << 1;
+    int tableMove = 0;
+    long entry = 0;
+    if (this.keys[slot] == key && this.entries[slot] != 0){
+      entry = this.entries[slot];
+    } else if (this.keys[slot + 1] == key && this.entries[slot + 1] != 0){
+      entry = this.entries[slot + 1];
+    }
+    if (entry != 0){
+      tableMove = moveOf(entry) == 0 ? 0 : g.fromCanonical(moveOf(entry), symmetry);
+      if (depthOf(entry) >= depth && ply > 0){
+        int score = fromTable(scoreOf(entry), ply);
+        int kind = kindOf(entry);
+        if (kind == EXACT || (kind == LOWER_BOUND && score >= beta) || (kind == UPPER_BOUND && score <= alpha)){
+          return score;
+        }
+      }
+    }
+
+    if (ply == this.moveLists.length){
+      this.moveLists = java.util.Arrays.copyOf(this.moveLists, 2 * ply + 8);
+    }
+    if (this.moveLists[ply] == null){
+      this.moveLists[ply] = new MoveList();
+    }
+    MoveList moves = this.moveLists[ply];
+    int count = generateMoves(g, moves, this.listed, this.lineWeights, tableMove);
+    int originalAlpha = alpha;
+    int best = -WIN - 1;
+    int bestMove = 0;
+    for (int i = 0; i < count; i++){
+      int move = moves.select(i);
+      g.makeMove(move);
+      int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+      g.undo();
+      if (this.stopped){
+        return 0;
+      }
+      if (score > best){
+        best = score;
+        bestMove = move;
+        if (score > alpha){
+          alpha = score;
+          if (alpha >= beta){
+            break;
+          }
+        }
+      }
+    }
+
+    int kind = EXACT;
+    if (best <= originalAlpha){
+      kind = UPPER_BOUND;
+    } else if (best >= beta){
+      kind = LOWER_BOUND;
+    }
+    store(slot, key, depth, toTable(best, ply), kind, g.toCanonical(bestMove, symmetry));
+    if (ply == 0){
+      this.rootMove = bestMove;
+    }
+    return best;
+  }
+
+  /**
+   * Fills a move list with the moves of the next player: every
+   * empty position on a board of up to FULL_WIDTH_CELLS cells, the
+   * empty positions next to a mark on a larger one (the centre if
+   * the board is empty), and the move from the table.  Each move is
+   * scored, the move from the table first, then the moves that
+   * extend or block the most open lines; MoveList.select() picks them
+   * in that order.
+   *
+   * @param g the game
+   * @param list the list to fill
+   * @param listed all false, with one entry per cell; left all false
+   * @param weights the weights of the lines, see lineWeights()
+   * @param tableMove the 1-based move from the table, or 0
+   * @return the number of moves
+   */
+  static int generateMoves(TicTacToe g, MoveList list, boolean[] listed, long[] weights, int tableMove) {
+    list.count = 0;
+    if (g.numCells <= FULL_WIDTH_CELLS){
+      //the free cells of the game are the empty positions, without scanning the board.
+      for (int f = 0; f < g.numFree; f++){
+        int cell = g.freeCells[f];
+        list.add(cell + 1, cell + 1 == tableMove ? Long.MAX_VALUE : scoreMove(g, cell, weights));
+      }
+      return list.count;
+    }
+
+    char[] board = g.board;
+    if (tableMove != 0 && board[tableMove - 1] == ' '){
+      listed[tableMove - 1] = true;
+      list.add(tableMove, Long.MAX_VALUE);
+    }
+    if (g.numRounds == 0){
+      int centre = (g.numRows / 2) * g.numColumns + g.numColumns / 2;
+      if (!listed[centre]){
+        listed[centre] = true;
+        list.add(centre + 1, 0);
+      }
+    }
+    int[] neighbors = g.layout.neighbors();
+    long[] xs = g.xBits;
+    long[] os = g.oBits;
+    for (int w = 0; w < g.layout.numWords; w++){
+      long marks = xs[w] | os[w];
+      while (marks != 0){
+        int cell = (w << 6) + Long.numberOfTrailingZeros(marks);
+        marks &= marks - 1;
+        for (int d = 8 * cell; d < 8 * cell + 8; d++){
+          int next = neighbors[d];
+          if (next >= 0 && board[next] == ' ' && !listed[next]){
+            listed[next] = true;
+            list.add(next + 1, scoreMove(g, next, weights));
+          }
+        }
+      }
+    }
+    for (int i = 0; i < list.count; i++){
+      listed[list.moves[i] - 1] = false;
+    }
+    //every mark may be walled in by other marks, leaving only cells far from them.
+    if (list.count == 0){
+      for (int f = 0; f < g.numFree; f++){
+        int cell = g.freeCells[f];
+        list.add(cell + 1, scoreMove(g, cell, weights));
+      }
+    }
+    return list.count;
+  }
+
+  /**
+   * How good a move looks for the next player: the weights of
+   * the open lines through the cell it extends or blocks.
+   */
+  static long scoreMove(TicTacToe g, int cell, long[] weights) {
+    BoardLayout lines = g.layout;
+    int[] own = g.xLineCounts;
+    int[] other = g.oLineCounts;
+    if (g.nextPlayer() == CellValue.O){
+      own = g.oLineCounts;
+      other = g.xLineCounts;
+    }
+    long score = 0;
+    for (int i = lines.cellLineStart[cell]; i < lines.cellLineStart[cell + 1]; i++){
+      int line = lines.cellLines[i];
+      if (other[line] == 0){
+        score += weights[own[line] + 1];
+      }
+      if (own[line] == 0){
+        score += weights[other[line] + 1] >> 1;
+      }
+    }
+    return score;
+  }
+
+  /**
+   * A guess of the score of a position that is not searched
+   * further: lines that only hold one player's marks count for
+   * that player, more so when they hold more marks.
+   */
+  private int evaluate() {
+    return evaluate(this.game, this.lineWeights);
+  }
+
+  /**
+   * The guess of the score of the provided game, for the next player.
+   */
+  static int evaluate(TicTacToe g, long[] weights) {
+    //the threat indexes count the open lines of each player by number of marks.
+    int[] xs = g.xThreats.open;
+    int[] os = g.oThreats.open;
+    long score = 0;
+    for (int count = 1; count < weights.length; count++){
+      score += weights[count] * (xs[count] - os[count]);
+    }
+    if (g.nextPlayer() == CellValue.O){
+      score = -score;
+    }
+    return (int) Math.max(-WIN_BOUND + 1, Math.min(WIN_BOUND - 1, score));
+  }
+
+  /**
+   * Stores a result in the bucket starting at slot: in the first
+   * slot if it is as deep, for the same position or from an earlier
+   * move, and in the second one otherwise.
+   */
+  private void store(int slot, long key, int depth, int score, int kind, int move) {
+    long old = this.entries[slot];
+    if (old != 0 && this.keys[slot] != key && depthOf(old) > depth && generationOf(old) == this.generation){
+      slot += 1;
+    }
+    this.keys[slot] = key;
+    this.entries[slot] = entry(score, move, depth, kind, this.generation);
+  }
+
+  /**
+   * Packs a table entry: the score in bits 0 to 20 (a score is
+   * never more than WIN, under 2^20), the move in bits 21 to 48,
+   * the depth in bits 49 to 58, the kind in bits 60 and 61 and
+   * the generation in bits 62 and 63.  Bit 59 is always set so
+   * that a stored entry is never 0.  A move above MAX_MOVE is
+   * stored as 0, no move.
+   */
+  static long entry(int score, int move, int depth, int kind, int generation) {
+    return (score & 0x1FFFFFL)
+      | ((long) (move > MAX_MOVE ? 0 : move) << 21)
+      | ((long) Math.min(depth, MAX_DEPTH) << 49)
+      | ((long) kind << 60)
+      | ((long) generation << 62)
+      | (1L << 59);
+  }
+
+  /**
+   * Wins are stored relative to the position rather than to the
+   * root, so that they stay valid when found from another ply.
+   */
+  static int toTable(int score, int ply) {
+    if (score > WIN_BOUND){
+      return score + ply;
+    }
+    if (score < -WIN_BOUND){
+      return score - ply;
+    }
+    return score;
+  }
+
+  static int fromTable(int score, int ply) {
+    if (score > WIN_BOUND){
+      return score - ply;
+    }
+    if (score < -WIN_BOUND){
+      return score + ply;
+    }
+    return score;
+  }
+
+  /**
+   * The fields of a table entry.
+   */
+  static int scoreOf(long entry) {
+    return (int) (entry << 43 >> 43);
+  }
+
+  static int moveOf(long entry) {
+    return (int) (entry >>> 21) & MAX_MOVE;
+  }
+
+  static int depthOf(long entry) {
+    return (int) (entry >>> 49) & MAX_DEPTH;
+  }
+
+  static int kindOf(long entry) {
+    return (int) (entry >>> 60) & 3;
+  }
+
+  static int generationOf(long entry) {
+    return (int) (entry >>> 62) & 3;
+  }
+
+  /**
+   * The moves of one ply and their scores.  The moves are
+   * not sorted: select() picks the best of those left.
+   */
+  static final class MoveList {
+    int[] moves = new int[16];
+    long[] scores = new long[16];
+    int count;
+
+    void add(int move, long score) {
+      if (this.count == this.moves.length){
+        this.moves = java.util.Arrays.copyOf(this.moves, 2 * this.count);
+        this.scores = java.util.Arrays.copyOf(this.scores, 2 * this.count);
+      }
+      this.moves[this.count] = move;
+      this.scores[this.count] = score;
+      this.count += 1;
+    }
+
+    /**
+     * Swaps the best of the moves from index i on to
+     * index i, and returns it.
+     */
+    int select(int i) {
+      int best = i;
+      for (int j = i + 1; j < this.count; j++){
+        if (this.scores[j] > this.scores[best]){
+          best = j;
+        }
+      }
+      int move = this.moves[best];
+      long score = this.scores[best];
+      this.moves[best] = this.moves[i];
+      this.scores[best] = this.scores[i];
+      this.moves[i] = move;
+      this.scores[i] = score;
+      return move;
+    }
+  }
+}
@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+
+/**
+ * The class <b>Batch</b> plays a stream of games without
+ * any console, for replaying recorded games in bulk.
+ *
+ * The input holds one game after the other.  Each game is
+ * a line with the number of rows, columns and the size to
+ * win, followed by a line with the positions played, for
+ * example:
+ *
+ * 3 3 3
+ * 5 2 1 9 4 6 7
+ *
+ * Empty lines and lines starting with # between games are
+ * ignored.  For each game, one line is written with the state
+ * of the game and the number of moves played, for example
+ * "XWIN 7".  With the --show option, the final board is
+ * written before that line.  A game whose first line is not
+ * three numbers, or whose board would be too large, is skipped
+ * with its line of moves, and "ERROR" and the reason are
+ * written instead, for example "ERROR Invalid dimensions -3 3 3".
+ *
+ * Input is read in large blocks through a channel, and output
+ * is written through a single buffer, so that no String is
+ * created per game unless boards are shown.
+ */
+public class Batch {
+
+  /**
+   * The size of the input and output buffers.
+   */
+  static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The largest boards played: their layout must
+   * fit in that many table entries (see BoardLayout).
+   */
+  static final long MAX_LAYOUT_ENTRIES = 1L << 26;
+
+  /**
+   * Where the games come from.
+   */
+  private final ReadableByteChannel in;
+  private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private boolean endOfInput;
+
+  /**
+   * Where the results go.
+   */
+  private final OutputStream out;
+  private final byte[] output = new byte[BUFFER_SIZE];
+  private int outputLength;
+
+  /**
+   * Should the final board of each game be written?
+   */
+  private final boolean showBoards;
+  private final StringBuilder board = new StringBuilder();
+
+  /**
+   * A batch reading from the provided channel and writing
+   * to the provided stream.
+   *
+   * @param in the games to play
+   * @param out where to write the results
+   * @param showBoards true to write the final board of each game
+   */
+  public Batch(ReadableByteChannel in, OutputStream out, boolean showBoards) {
+    this.in = in;
+    this.out = out;
+    this.showBoards = showBoards;
+    this.input.flip();
+  }
+
+  /**
+   * Runs a batch from the command line parameters of Main:
+   * --batch [file] [--show].  Without a file, the games
+   * are read from the standard input.
+   *
+   * @param args command lines parameters, starting with --batch
+   */
+  public static void run(String[] args) throws IOException {
+    String file = null;
+    boolean show = false;
+    for (int i = 1; i < args.length; i++){
+      if ("--show".equals(args[i])){
+        show = true;
+      } else {
+        file = args[i];
+      }
+    }
+    ReadableByteChannel in;
+    if (file == null){
+      in = Channels.newChannel(System.in);
+    } else {
+      in = FileChannel.open(Paths.get(file));
+    }
+    try (ReadableByteChannel channel = in) {
+      new Batch(channel, System.out, show).playAll();
+    }
+  }
+
+  /**
+   * Plays every game of the input and writes their results.  The
+   * results written so far are flushed even if reading fails.
+   *
+   * @return the number of games played, not counting the games skipped
+   */
+  public long playAll() throws IOException {
+    try {
+      return playGames();
+    } finally {
+      flush();
+    }
+  }
+
+  private long playGames() throws IOException {
+    long games = 0;
+    //a single game is reset for each game of the input.
+    TicTacToe game = null;
+    while (skipToGame()){
+      int[] dimensions = this.dimensions;
+      int count = 0;
+      while (count < dimensions.length && hasIntOnLine()){
+        dimensions[count] = readInt();
+        count += 1;
+      }
+      skipLine();
+      int rows = dimensions[0];
+      int columns = dimensions[1];
+      int wins = dimensions[2];
+      if (count < dimensions.length || rows < 1 || columns < 1 || wins < 1
+          || BoardLayout.estimateEntries(rows, columns, wins) > MAX_LAYOUT_ENTRIES){
+        skipLine();
+        write("ERROR ");
+        if (count < dimensions.length){
+          write("Three numbers were expected");
+        } else {
+          write("Invalid dimensions ");
+          write(rows);
+          write(' ');
+          write(columns);
+          write(' ');
+          write(wins);
+        }
+        write('\n');
+        continue;
+      }
+
+      if (game == null){
+        game = new TicTacToe(rows, columns, wins);
+      } else {
+        game.reset(rows, columns, wins);
+      }
+      while (hasIntOnLine()){
+        game.tryPlay(readInt());
+      }
+      skipLine();
+
+      if (this.showBoards){
+        this.board.setLength(0);
+        game.appendTo(this.board).append('\n');
+        write(this.board);
+      }
+      write(game.gameState.name());
+      write(' ');
+      write(game.numRounds);
+      write('\n');
+      games += 1;
+    }
+    return games;
+  }
+
+  /**
+   * The numbers of the first line of the game being read.
+   */
+  private final int[] dimensions = new int[3];
+
+  /**
+   * Skips empty lines and comments before the next game.
+   *
+   * @return false if there are no more games
+   */
+  private boolean skipToGame() throws IOException {
+    while (true){
+      int c = peek();
+      if (c < 0){
+        return false;
+      }
+      if (c == '#'){
+        skipLine();
+      } else if (c == '\n' || c == '\r' || c == ' ' || c == '\t'){
+        next();
+      } else {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Is there another number before the end of the line?
+   */
+  private boolean hasIntOnLine() throws IOException {
+    int c = peek();
+    while (c == ' ' || c == '\t' || c == ','){
+      next();
+      c = peek();
+    }
+    return c == '-' || (c >= '0' && c <= '9');
+  }
+
+  /**
+   * Reads the next number of the line.  Numbers too large
+   * for an int are read as Integer.MAX_VALUE (or MIN_VALUE).
+   */
+  private int readInt() throws IOException {
+    if (!hasIntOnLine()){
+      throw new IOException("A number was expected");
+    }
+    boolean negative = false;
+    if (peek() == '-'){
+      negative = true;
+      next();
+    }
+    long value = 0;
+    int c = peek();
+    while (c >= '0' && c <= '9'){
+      value = Math.min(value * 10 + (c - '0'), 1L << 31);
+      next();
+      c = peek();
+    }
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, negative ? -value : value));
+  }
+
+  /**
+   * Skips everything up to and including the end of the line.
+   */
+  private void skipLine() throws IOException {
+    int c = peek();
+    while (c >= 0 && c != '\n'){
+      next();
+      c = peek();
+    }
+    if (c == '\n'){
+      next();
+    }
+  }
+
+  /**
+   * The next byte of input without consuming it, or -1 at the end.
+   */
+  private int peek() throws IOException {
+    if (!this.input.hasRemaining()){
+      if (this.endOfInput){
+        return -1;
+      }
+      this.input.clear();
+      int read = 0;
+      while (read == 0){
+        read = this.in.read(this.input);
+      }
+      this.input.flip();
+      if (read < 0){
+        this.endOfInput = true;
+        return -1;
+      }
+    }
+    return this.input.get(this.input.position()) & 0xFF;
+  }
+
+  private void next() {
+    this.input.position(this.input.position() + 1);
+  }
+
+  /**
+   * Writes to the output buffer, flushing it when it is full.
+   */
+  private void write(char c) throws IOException {
+    if (this.outputLength == this.output.length){
+      flush();
+    }
+    this.output[this.outputLength] = (byte) c;
+    this.outputLength += 1;
+  }
+
+  private void write(CharSequence text) throws IOException {
+    for (int i = 0; i < text.length(); i++){
+      write(text.charAt(i));
+    }
+  }
+
+  private void write(int value) throws IOException {
+    if (value == Integer.MIN_VALUE){
+      write("-2147483648");
+      return;
+    }
+    if (value < 0){
+      write('-');
+      value = -value;
+    }
+    int divisor = 1;
+    while (value / divisor >= 10){
+      divisor *= 10;
+    }
+    while (divisor > 0){
+      write((char) ('0' + value / divisor % 10));
+      divisor /= 10;
+    }
+  }
+
+  private void flush() throws IOException {
+    this.out.write(this.output, 0, this.outputLength);
+    this.outputLength = 0;
+    this.out.flush();
+  }
+}
@@ -0,0 +1,347 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>Benchmark</b> measures the hot paths of TicTacToe:
+ * play() and tryPlay() on boards from 3x3 to 100x100, the win check in each
+ * direction and the draw, valueAt(), toString(), show() and
+ * complete random games.
+ *
+ * Each benchmark is warmed up, then measured over several rounds.
+ * The results are printed and written as JSON, so that runs on
+ * different commits can be compared.
+ *
+ * Usage: java Benchmark [output.json] [name filter] [label]
+ */
+public class Benchmark {
+
+  /**
+   * The board sizes measured (square boards).
+   */
+  static final int[] SIZES = {3, 10, 30, 100};
+
+  /**
+   * The time spent warming up, and measuring each round.
+   */
+  static final long WARMUP_NANOS = 500000000L;
+  static final long ROUND_NANOS = 200000000L;
+  static final int ROUNDS = 5;
+
+  /**
+   * Results are added here so that the JIT can not
+   * remove the code being measured.
+   */
+  static volatile long sink;
+
+  /**
+   * One benchmark: run() performs one operation and
+   * returns a value that depends on its result.
+   */
+  interface Operation {
+    long run();
+  }
+
+  /**
+   * The result of one benchmark.
+   */
+  static class Result {
+    final String name;
+    final String params;
+    final double opsPerSecond;
+    final double error;
+
+    Result(String name, String params, double opsPerSecond, double error) {
+      this.name = name;
+      this.params = params;
+      this.opsPerSecond = opsPerSecond;
+      this.error = error;
+    }
+  }
+
+  private final String filter;
+  private final List<Result> results = new ArrayList<Result>();
+
+  Benchmark(String filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Runs every benchmark whose name contains the filter.
+   *
+   * @param args command lines parameters
+   */
+  public static void main(String[] args) throws IOException {
+    String output = args.length > 0 ? args[0] : "benchmark.json";
+    String filter = args.length > 1 ? args[1] : "";
+    String label = args.length > 2 ? args[2] : "";
+
+    Benchmark benchmark = new Benchmark(filter);
+    for (int size : SIZES){
+      int win = Math.min(size, 5);
+      String params = size + "x" + size + "/" + win;
+      benchmark.playWins(size, win, params);
+      benchmark.playDraw(size, win, params);
+      benchmark.valueAt(size, win, params);
+      benchmark.rendering(size, win, params);
+      benchmark.randomGames(size, win, params);
+    }
+    benchmark.write(output, label);
+  }
+
+  /**
+   * play() of the move completing a line, in each direction,
+   * then undo() so that it can be played again.
+   */
+  void playWins(int size, int win, String params) {
+    String[] names = {"play.win.horizontal", "play.win.vertical", "play.win.forwardDiagonal", "play.win.backwardDiagonal"};
+    for (int d = 0; d < names.length; d++){
+      int row = 0;
+      int column = BoardLayout.COLUMN_STEP[d] < 0 ? win - 1 : 0;
+      int[] line = new int[win];
+      for (int i = 0; i < win; i++){
+        line[i] = (row + i * BoardLayout.ROW_STEP[d]) * size + column + i * BoardLayout.COLUMN_STEP[d] + 1;
+      }
+
+      //X fills the line but its last cell, O plays as far as possible from it.
+      TicTacToe game = new TicTacToe(size, size, win);
+      int other = size * size;
+      for (int i = 0; i < win - 1; i++){
+        game.play(line[i]);
+        while (contains(line, other)){
+          other -= 1;
+        }
+        game.play(other);
+        other -= 1;
+      }
+      int last = line[win - 1];
+      measure(names[d], params, () -> {
+        String message = game.play(last);
+        game.undo();
+        return message.length();
+      });
+    }
+  }
+
+  /**
+   * play() and tryPlay() of the move filling the board without
+   * a winner, then undo().  The moves come from drawnMoves(), so
+   * every line is checked as in a real game.
+   */
+  void playDraw(int size, int win, String params) {
+    TicTacToe game = new TicTacToe(size, size, win);
+    int[] moves = drawnMoves(size);
+    for (int i = 0; i < moves.length - 1; i++){
+      game.play(moves[i]);
+    }
+    int last = moves[moves.length - 1];
+    measure("play.draw", params, () -> {
+      String message = game.play(last);
+      game.undo();
+      return message.length();
+    });
+    measure("tryPlay.draw", params, () -> {
+      PlayResult result = game.tryPlay(last);
+      game.undo();
+      return result.ordinal();
+    });
+  }
+
+  /**
+   * The moves of a game filling a size x size board without three
+   * marks in a row in any direction, so that it ends in a draw for
+   * any sizeToWin of 3 or more.  The cell (row, column) goes to X when
+   * column / 2 + row is even: rows alternate by pairs, columns and
+   * diagonals never hold more than two equal marks in a row.
+   */
+  static int[] drawnMoves(int size) {
+    int cells = size * size;
+    int[] x = new int[cells];
+    int[] o = new int[cells];
+    int numX = 0;
+    int numO = 0;
+    for (int row = 0; row < size; row++){
+      for (int column = 0; column < size; column++){
+        if ((column / 2 + row) % 2 == 0){
+          x[numX++] = row * size + column + 1;
+        } else {
+          o[numO++] = row * size + column + 1;
+        }
+      }
+    }
+    if (numX != numO && numX != numO + 1){
+      throw new IllegalArgumentException("No drawn game for a board of size " + size);
+    }
+    int[] moves = new int[cells];
+    for (int i = 0; i < cells; i++){
+      moves[i] = i % 2 == 0 ? x[i / 2] : o[i / 2];
+    }
+    return moves;
+  }
+
+  /**
+   * Both valueAt() methods, over every cell of a half full board.
+   */
+  void valueAt(int size, int win, String params) {
+    TicTacToe game = halfFull(size, win);
+    int cells = size * size;
+    measure("valueAt.position", params + " (all cells)", () -> {
+      long sum = 0;
+      for (int i = 1; i <= cells; i++){
+        sum += game.valueAt(i).ordinal();
+      }
+      return sum;
+    });
+    measure("valueAt.rowColumn", params + " (all cells)", () -> {
+      long sum = 0;
+      for (int row = 1; row <= size; row++){
+        for (int column = 1; column <= size; column++){
+          sum += game.valueAt(row, column).ordinal();
+        }
+      }
+      return sum;
+    });
+  }
+
+  /**
+   * toString() and show() of a half full board.
+   */
+  void rendering(int size, int win, String params) {
+    TicTacToe game = halfFull(size, win);
+    measure("toString", params, () -> game.toString().length());
+    measure("show", params, () -> game.show()[0].length());
+  }
+
+  /**
+   * Complete games with random moves, from a new game to a win or a draw.
+   */
+  void randomGames(int size, int win, String params) {
+    SplittableRandom random = new SplittableRandom(42);
+    int cells = size * size;
+    int[] order = new int[cells];
+    for (int i = 0; i < cells; i++){
+      order[i] = i + 1;
+    }
+    measure("randomGame", params, () -> {
+      TicTacToe game = new TicTacToe(size, size, win);
+      for (int i = 0; i < cells && game.gameState == GameState.PLAYING; i++){
+        int j = i + random.nextInt(cells - i);
+        int position = order[j];
+        order[j] = order[i];
+        order[i] = position;
+        game.tryPlay(position);
+      }
+      return game.numRounds;
+    });
+  }
+
+  /**
+   * A game where every other cell has been played,
+   * mostly without a winner.
+   */
+  private static TicTacToe halfFull(int size, int win) {
+    TicTacToe game = new TicTacToe(size, size, win);
+    for (int i = 1; i <= size * size; i += 2){
+      game.play(i);
+    }
+    return game;
+  }
+
+  private static boolean contains(int[] values, int value) {
+    for (int v : values){
+      if (v == value){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Warms up an operation, then measures how many times per
+   * second it runs over several rounds.
+   */
+  void measure(String name, String params, Operation operation) {
+    if (!name.contains(this.filter)){
+      return;
+    }
+    runFor(operation, WARMUP_NANOS);
+    double[] rates = new double[ROUNDS];
+    double mean = 0;
+    for (int r = 0; r < ROUNDS; r++){
+      rates[r] = runFor(operation, ROUND_NANOS);
+      mean += rates[r] / ROUNDS;
+    }
+    double variance = 0;
+    for (double rate : rates){
+      variance += (rate - mean) * (rate - mean) / Math.max(ROUNDS - 1, 1);
+    }
+    double error = Math.sqrt(variance);
+    this.results.add(new Result(name, params, mean, error));
+    System.out.printf("%-28s %-22s %16.1f ops/s  +- %.1f%n", name, params, mean, error);
+  }
+
+  /**
+   * Runs the operation for about the provided time.
+   *
+   * @return the number of operations per second
+   */
+  private static double runFor(Operation operation, long nanos) {
+    long start = System.nanoTime();
+    long end = start + nanos;
+    long count = 0;
+    long sum = 0;
+    long now;
+    do {
+      for (int i = 0; i < 64; i++){
+        sum += operation.run();
+      }
+      count += 64;
+      now = System.nanoTime();
+    } while (now < end);
+    sink += sum;
+    return count * 1e9 / (now - start);
+  }
+
+  /**
+   * Writes the results as JSON.
+   */
+  void write(String output, String label) throws IOException {
+    try (Writer out = new FileWriter(output)) {
+      out.write("{\n");
+      out.write("  \"label\": \"" + escape(label) + "\",\n");
+      out.write("  \"java\": \"" + System.getProperty("java.version") + "\",\n");
+      out.write("  \"timestamp\": " + System.currentTimeMillis() + ",\n");
+      out.write("  \"results\": [\n");
+      for (int i = 0; i < this.results.size(); i++){
+        Result r = this.results.get(i);
+        out.write("    {\"name\": \"" + escape(r.name) + "\", \"params\": \"" + escape(r.params) + "\", ");
+        out.write("\"unit\": \"ops/s\", \"score\": " + r.opsPerSecond + ", \"error\": " + r.error + "}");
+        out.write(i < this.results.size() - 1 ? ",\n" : "\n");
+      }
+      out.write("  ]\n");
+      out.write("}\n");
+    }
+  }
+
+  /**
+   * Escapes a string for a JSON string literal: quotes, backslashes
+   * and control characters.
+   */
+  static String escape(String value) {
+    StringBuilder out = new StringBuilder(value.length() + 8);
+    for (int i = 0; i < value.length(); i++){
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\'){
+        out.append('\\').append(c);
+      } else if (c < 0x20){
+        out.append(String.format("\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+}
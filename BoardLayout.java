@@ -0,0 +1,450 @@
+/**
+ * The class <b>BoardLayout</b> holds everything that only
+ * depends on the dimensions of a game (numRows, numColumns
+ * and sizeToWin) and not on the moves that have been played.
+ *
+ * The board is seen as a bitboard: cell i (0-based) is bit
+ * (i % 64) of word (i / 64).  Every window of sizeToWin
+ * aligned cells (horizontally, vertically or diagonally) is a
+ * winning line, stored as a list of (word, mask) pairs so that
+ * checking a line is a few AND/compare operations.
+ *
+ * For each cell we also keep the list of lines going through it,
+ * so that after a play only those lines have to be checked.
+ *
+ * A layout never changes once built, so all the games of the same
+ * dimensions share one, taken from a cache with forConfig().  A
+ * layout is built the first time its dimensions are asked for; the
+ * line tables are built with it, since every move reads them, while
+ * the tables only some programs use (neighbors and runStarts) are
+ * built the first time they are needed.
+ *
+ * The rotations and reflections that map the board onto itself
+ * (8 on a square board, 4 otherwise) are numbered so that
+ * symmetricCell() can map any cell through any of them.
+ */
+public class BoardLayout {
+
+  /**
+   * The row and column steps of the four directions,
+   * in the order horizontal -, vertical |,
+   * forward diagonal / and backward diagonal \.
+   */
+  static final int[] ROW_STEP = {0, 1, 1, 1};
+  static final int[] COLUMN_STEP = {1, 0, -1, 1};
+
+  /**
+   * The dimensions this layout was built for.
+   */
+  final int numRows;
+  final int numColumns;
+  final int sizeToWin;
+
+  /**
+   * The number of cells, and the number of 64 bits words
+   * needed to store one bit per cell.
+   */
+  final int numCells;
+  final int numWords;
+
+  /**
+   * The number of winning lines on the board.
+   */
+  final int numLines;
+
+  /**
+   * Lines are numbered direction by direction: the lines of
+   * direction d are from directionLineStart[d] (included) to
+   * directionLineStart[d+1] (excluded).
+   */
+  final int[] directionLineStart;
+
+  /**
+   * The (word, mask) pairs of line l are stored from
+   * lineWordStart[l] (included) to lineWordStart[l+1] (excluded)
+   * in lineWords and lineMasks.
+   */
+  final int[] lineWordStart;
+  final int[] lineWords;
+  final long[] lineMasks;
+
+  /**
+   * The lines going through cell i are stored from
+   * cellLineStart[i] (included) to cellLineStart[i+1] (excluded)
+   * in cellLines.
+   */
+  final int[] cellLineStart;
+  final int[] cellLines;
+
+  /**
+   * The random Zobrist keys of an X and of an O in each cell.
+   * The hash of a board is the XOR of the keys of its marks,
+   * so it can be updated with a single XOR at each move.
+   */
+  final long[] xKeys;
+  final long[] oKeys;
+
+  /**
+   * The number of symmetries of the board: the identity, the half
+   * turn and the two mirrors, plus on a square board the two
+   * diagonal mirrors and the two quarter turns.
+   */
+  final int numSymmetries;
+
+  /**
+   * The symmetry undoing each symmetry.  Only the quarter
+   * turns are not their own inverse.
+   */
+  static final int[] INVERSE_SYMMETRY = {0, 1, 2, 3, 4, 5, 7, 6};
+
+  /**
+   * The neighbours of each cell, built the first time they are
+   * needed: the 8 cells around cell i are at neighbors[8*i] to
+   * neighbors[8*i+7], in the directions of ROW_STEP and COLUMN_STEP
+   * then their opposites, with -1 for the cells off the board.
+   */
+  private volatile int[] neighbors;
+
+  /**
+   * The cells where a line can start in each direction, built the
+   * first time they are needed: runStarts[d] is a bitboard of the
+   * cells from which sizeToWin cells, going ROW_STEP[d] rows and
+   * COLUMN_STEP[d] columns at a time, stay on the board.
+   */
+  private volatile long[][] runStarts;
+
+  /**
+   * The largest number of layouts kept in the cache, and the
+   * largest number of table entries (ints and longs) they may
+   * hold together.  The layouts used the least recently are
+   * forgotten first.
+   */
+  static final int MAX_CACHED_LAYOUTS = 64;
+  static final long MAX_CACHED_ENTRIES = 32L << 20;
+
+  private static final java.util.LinkedHashMap<Long, BoardLayout> cache =
+    new java.util.LinkedHashMap<Long, BoardLayout>(16, 0.75f, true);
+  private static long cachedEntries;
+
+  /**
+   * The layout of the provided dimensions, shared by every game
+   * of these dimensions.  It is built the first time it is asked
+   * for, and kept until it becomes one of the least recently used.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   * @return the layout
+   */
+  public static BoardLayout forConfig(int aNumRows, int aNumColumns, int aSizeToWin) {
+    Long key = ((long) aNumRows << 42) ^ ((long) aNumColumns << 21) ^ (aSizeToWin & 0x1FFFFFL);
+    synchronized (cache) {
+      BoardLayout layout = cache.get(key);
+      if (layout != null && layout.numRows == aNumRows && layout.numColumns == aNumColumns
+          && layout.sizeToWin == aSizeToWin){
+        return layout;
+      }
+    }
+
+    //built outside of the lock, so that a big layout does not hold back the others.
+    BoardLayout layout = new BoardLayout(aNumRows, aNumColumns, aSizeToWin);
+    long entries = layout.numEntries();
+    if (entries > MAX_CACHED_ENTRIES / 4){
+      return layout;
+    }
+    synchronized (cache) {
+      BoardLayout previous = cache.put(key, layout);
+      if (previous != null){
+        cachedEntries -= previous.numEntries();
+      }
+      cachedEntries += entries;
+      java.util.Iterator<BoardLayout> eldest = cache.values().iterator();
+      while (cache.size() > MAX_CACHED_LAYOUTS || cachedEntries > MAX_CACHED_ENTRIES){
+        cachedEntries -= eldest.next().numEntries();
+        eldest.remove();
+      }
+    }
+    return layout;
+  }
+
+  /**
+   * About how much memory the tables of the layout take,
+   * counted in array entries.  The tables built the first time
+   * they are needed (neighbors and runStarts) are counted as if
+   * they were built, so that the size of a cached layout does
+   * not change.
+   */
+  long numEntries() {
+    return (long) this.cellLines.length + this.lineWords.length + this.lineMasks.length
+      + this.cellLineStart.length + this.lineWordStart.length + 2L * this.numCells
+      + 8L * this.numCells + (long) ROW_STEP.length * this.numWords;
+  }
+
+  /**
+   * About how many table entries the layout of the provided
+   * dimensions takes while it is built, counted without building
+   * it, so that dimensions too large for the memory can be refused.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   * @return the number of ints and longs of the tables
+   */
+  static long estimateEntries(int aNumRows, int aNumColumns, int aSizeToWin) {
+    long rows = Math.max(aNumRows, 0);
+    long columns = Math.max(aNumColumns, 0);
+    long cells = rows * columns;
+    long k = Math.max(aSizeToWin, 1);
+    long lines;
+    if (aSizeToWin < 1){
+      lines = 0;
+    } else if (aSizeToWin == 1){
+      lines = cells;
+    } else {
+      long across = Math.max(columns - k + 1, 0);
+      long down = Math.max(rows - k + 1, 0);
+      lines = rows * across + down * columns + 2 * down * across;
+    }
+    //the cells of the lines are listed while building, then for each cell and as (word, mask) pairs.
+    return 4 * lines * k + 2 * lines + 6 * cells;
+  }
+
+  /**
+   * Builds all the winning lines of a numRows x numColumns
+   * board where sizeToWin cells must be aligned.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   */
+  public BoardLayout(int aNumRows, int aNumColumns, int aSizeToWin) {
+    this.numRows = aNumRows;
+    this.numColumns = aNumColumns;
+    this.sizeToWin = aSizeToWin;
+    this.numCells = aNumRows * aNumColumns;
+    this.numWords = (this.numCells + 63) >>> 6;
+    this.numSymmetries = aNumRows == aNumColumns ? 8 : 4;
+
+    //First pass counts the lines, second pass fills them in.
+    int lines = 0;
+    this.directionLineStart = new int[ROW_STEP.length + 1];
+    for (int d = 0; d < ROW_STEP.length; d++){
+      if (d < numDirections()){
+        lines += countStarts(d);
+      }
+      this.directionLineStart[d + 1] = lines;
+    }
+    this.numLines = lines;
+
+    int[] lineCells = new int[lines * Math.max(aSizeToWin, 0)];
+    int[] linesPerCell = new int[this.numCells + 1];
+    int line = 0;
+    for (int d = 0; d < numDirections(); d++){
+      for (int row = 0; row < aNumRows; row++){
+        for (int column = 0; column < aNumColumns; column++){
+          if (!isStart(d, row, column)){
+            continue;
+          }
+          for (int i = 0; i < aSizeToWin; i++){
+            int cell = (row + i * ROW_STEP[d]) * aNumColumns + column + i * COLUMN_STEP[d];
+            lineCells[line * aSizeToWin + i] = cell;
+            linesPerCell[cell] += 1;
+          }
+          line += 1;
+        }
+      }
+    }
+
+    //Lines through each cell, as offsets into a single array.
+    this.cellLineStart = new int[this.numCells + 1];
+    for (int i = 0; i < this.numCells; i++){
+      this.cellLineStart[i + 1] = this.cellLineStart[i] + linesPerCell[i];
+    }
+    this.cellLines = new int[this.cellLineStart[this.numCells]];
+    int[] next = new int[this.numCells];
+    for (int l = 0; l < lines; l++){
+      for (int i = 0; i < aSizeToWin; i++){
+        int cell = lineCells[l * aSizeToWin + i];
+        this.cellLines[this.cellLineStart[cell] + next[cell]] = l;
+        next[cell] += 1;
+      }
+    }
+
+    //Masks of each line, merged per word. Cells of a line are in
+    //increasing order, so cells sharing a word are consecutive.
+    int pairs = 0;
+    for (int l = 0; l < lines; l++){
+      int previousWord = -1;
+      for (int i = 0; i < aSizeToWin; i++){
+        int word = lineCells[l * aSizeToWin + i] >>> 6;
+        if (word != previousWord){
+          pairs += 1;
+          previousWord = word;
+        }
+      }
+    }
+    this.lineWordStart = new int[lines + 1];
+    this.lineWords = new int[pairs];
+    this.lineMasks = new long[pairs];
+    int pair = -1;
+    for (int l = 0; l < lines; l++){
+      int previousWord = -1;
+      for (int i = 0; i < aSizeToWin; i++){
+        int cell = lineCells[l * aSizeToWin + i];
+        if ((cell >>> 6) != previousWord){
+          pair += 1;
+          previousWord = cell >>> 6;
+          this.lineWords[pair] = previousWord;
+        }
+        this.lineMasks[pair] |= 1L << cell;
+      }
+      this.lineWordStart[l + 1] = pair + 1;
+    }
+
+    //The keys only need to be random looking, a fixed seed makes hashes reproducible.
+    java.util.SplittableRandom random = new java.util.SplittableRandom(0x5DEECE66DL);
+    this.xKeys = new long[this.numCells];
+    this.oKeys = new long[this.numCells];
+    for (int i = 0; i < this.numCells; i++){
+      this.xKeys[i] = random.nextLong();
+      this.oKeys[i] = random.nextLong();
+    }
+  }
+
+  /**
+   * The neighbours of every cell, see the neighbors field.
+   *
+   * @return the table of neighbours, which must not be modified
+   */
+  public int[] neighbors() {
+    int[] table = this.neighbors;
+    if (table == null){
+      table = new int[8 * this.numCells];
+      for (int cell = 0; cell < this.numCells; cell++){
+        int row = cell / this.numColumns;
+        int column = cell % this.numColumns;
+        for (int d = 0; d < 8; d++){
+          int sign = d < ROW_STEP.length ? 1 : -1;
+          int r = row + sign * ROW_STEP[d % ROW_STEP.length];
+          int c = column + sign * COLUMN_STEP[d % ROW_STEP.length];
+          boolean onBoard = r >= 0 && r < this.numRows && c >= 0 && c < this.numColumns;
+          table[8 * cell + d] = onBoard ? r * this.numColumns + c : -1;
+        }
+      }
+      this.neighbors = table;
+    }
+    return table;
+  }
+
+  /**
+   * The cells where a line can start in each direction, see the
+   * runStarts field.
+   *
+   * @return the bitboards, which must not be modified
+   */
+  public long[][] runStarts() {
+    long[][] starts = this.runStarts;
+    if (starts == null){
+      starts = new long[ROW_STEP.length][this.numWords];
+      int span = Math.max(this.sizeToWin, 1) - 1;
+      for (int d = 0; d < ROW_STEP.length; d++){
+        for (int cell = 0; cell < this.numCells; cell++){
+          int lastRow = cell / this.numColumns + span * ROW_STEP[d];
+          int lastColumn = cell % this.numColumns + span * COLUMN_STEP[d];
+          if (lastRow < this.numRows && lastColumn >= 0 && lastColumn < this.numColumns){
+            starts[d][cell >>> 6] |= 1L << cell;
+          }
+        }
+      }
+      this.runStarts = starts;
+    }
+    return starts;
+  }
+
+  /**
+   * The direction of a line, as an index in ROW_STEP and COLUMN_STEP.
+   *
+   * @param line the index of the line
+   * @return the direction of the line
+   */
+  public int directionOf(int line) {
+    int d = 0;
+    while (line >= this.directionLineStart[d + 1]){
+      d += 1;
+    }
+    return d;
+  }
+
+  /**
+   * Where a cell goes through one of the symmetries of the board:
+   * 0 identity, 1 half turn, 2 left-right mirror, 3 top-bottom
+   * mirror, and on square boards 4 transpose, 5 anti-transpose,
+   * 6 quarter turn clockwise, 7 quarter turn counterclockwise.
+   *
+   * @param symmetry the symmetry, less than numSymmetries
+   * @param row the 0-based row of the cell
+   * @param column the 0-based column of the cell
+   * @return the 0-based cell it is mapped to
+   */
+  public int symmetricCell(int symmetry, int row, int column) {
+    int lastRow = this.numRows - 1;
+    int lastColumn = this.numColumns - 1;
+    switch (symmetry){
+      case 0: return row * this.numColumns + column;
+      case 1: return (lastRow - row) * this.numColumns + lastColumn - column;
+      case 2: return row * this.numColumns + lastColumn - column;
+      case 3: return (lastRow - row) * this.numColumns + column;
+      case 4: return column * this.numColumns + row;
+      case 5: return (lastColumn - column) * this.numColumns + lastRow - row;
+      case 6: return column * this.numColumns + lastRow - row;
+      default: return (lastColumn - column) * this.numColumns + row;
+    }
+  }
+
+  /**
+   * Where a cell goes through one of the symmetries of the board.
+   *
+   * @param symmetry the symmetry, less than numSymmetries
+   * @param cell the 0-based cell
+   * @return the 0-based cell it is mapped to
+   */
+  public int symmetricCell(int symmetry, int cell) {
+    return symmetricCell(symmetry, cell / this.numColumns, cell % this.numColumns);
+  }
+
+  /**
+   * With a single cell to align, every direction gives the
+   * same line, so only one of them is kept.
+   */
+  private int numDirections() {
+    return this.sizeToWin == 1 ? 1 : ROW_STEP.length;
+  }
+
+  /**
+   * Can a line of sizeToWin cells in direction d start at (row, column)
+   * and stay on the board?
+   */
+  private boolean isStart(int d, int row, int column) {
+    if (this.sizeToWin < 1){
+      return false;
+    }
+    int lastRow = row + (this.sizeToWin - 1) * ROW_STEP[d];
+    int lastColumn = column + (this.sizeToWin - 1) * COLUMN_STEP[d];
+    return lastRow < this.numRows && lastColumn >= 0 && lastColumn < this.numColumns;
+  }
+
+  /**
+   * How many lines in direction d fit on the board.
+   */
+  private int countStarts(int d) {
+    int count = 0;
+    for (int row = 0; row < this.numRows; row++){
+      for (int column = 0; column < this.numColumns; column++){
+        if (isStart(d, row, column)){
+          count += 1;
+        }
+      }
+    }
+    return count;
+  }
+}
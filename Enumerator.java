@@ -0,0 +1,349 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class <b>Enumerator</b> counts every position that can be
+ * reached in a game of the provided dimensions, and how many of them
+ * are won by X, won by O, drawn or still being played.  For example,
+ * there are 5478 positions on a 3x3 board, 958 of which end the game.
+ *
+ * By default a game stops at its end, as players usually do.  With
+ * --continue, moves are played after a win until the board is full,
+ * as TicTacToe.play() allows, and the winner stays the player who
+ * won first.  Two positions are the same when they have the same
+ * board and the same state, since with --continue the same board
+ * can have a different winner depending on the order of the moves.
+ *
+ * The game tree is walked on a ForkJoinPool: the first moves are
+ * split into tasks, each walking its subtree on its own game.  The
+ * positions already seen are kept in a lock-free set of longs, one
+ * AtomicLongArray, so that there is a single object for the garbage
+ * collector however many positions there are.  A position is encoded
+ * exactly in base 3 (0 empty, 1 X, 2 O, one digit per cell) with its
+ * state, which limits boards to 37 cells.
+ *
+ * The set has 2^(table bits) slots.  By default it is sized for every
+ * board with as many Xs as Os or one more, within half of the heap;
+ * games that end early reach far fewer positions, so a larger board
+ * may need more table bits, or a larger heap (-Xmx), than this.
+ *
+ * Usage: java Enumerator rows columns win [--continue] [threads] [table bits]
+ */
+public class Enumerator {
+
+  /**
+   * The largest board whose positions fit in a long with their state.
+   */
+  static final int MAX_CELLS = 37;
+
+  /**
+   * The moves after which the walk is split in tasks.
+   */
+  static final int SPLIT_ROUNDS = 3;
+
+  /**
+   * The most table bits: the slots of the set are indexed by an int.
+   */
+  static final int MAX_TABLE_BITS = 30;
+
+  private final int numRows;
+  private final int numColumns;
+  private final int sizeToWin;
+  private final boolean continueAfterWin;
+  private final LongSet seen;
+  private final long[] powers;
+
+  /**
+   * The number of positions found in each GameState.
+   */
+  private final LongAdder[] counts = new LongAdder[GameState.values().length];
+
+  /**
+   * An enumerator of the positions of a game.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win
+   * @param continueAfterWin true to keep playing after a win
+   * @param tableBits the set of positions holds up to 2^tableBits of them
+   */
+  public Enumerator(int aNumRows, int aNumColumns, int aSizeToWin, boolean continueAfterWin, int tableBits) {
+    if (aNumRows * aNumColumns > MAX_CELLS){
+      throw new IllegalArgumentException("Boards of more than " + MAX_CELLS + " cells can not be enumerated");
+    }
+    if (tableBits < 1 || tableBits > MAX_TABLE_BITS){
+      throw new IllegalArgumentException("The table bits must be between 1 and " + MAX_TABLE_BITS);
+    }
+    this.numRows = aNumRows;
+    this.numColumns = aNumColumns;
+    this.sizeToWin = aSizeToWin;
+    this.continueAfterWin = continueAfterWin;
+    this.seen = new LongSet(tableBits);
+    this.powers = new long[aNumRows * aNumColumns];
+    long power = 1;
+    for (int i = 0; i < this.powers.length; i++){
+      this.powers[i] = power;
+      power *= 3;
+    }
+    for (int i = 0; i < this.counts.length; i++){
+      this.counts[i] = new LongAdder();
+    }
+  }
+
+  public static void main(String[] args) {
+    int rows = Integer.parseInt(args[0]);
+    int columns = Integer.parseInt(args[1]);
+    int wins = Integer.parseInt(args[2]);
+    boolean continueAfterWin = false;
+    List<String> rest = new ArrayList<String>();
+    for (int i = 3; i < args.length; i++){
+      if ("--continue".equals(args[i])){
+        continueAfterWin = true;
+      } else {
+        rest.add(args[i]);
+      }
+    }
+    int threads = rest.size() > 0 ? Integer.parseInt(rest.get(0)) : Runtime.getRuntime().availableProcessors();
+    int tableBits = rest.size() > 1 ? Integer.parseInt(rest.get(1)) : defaultTableBits(rows * columns);
+    int neededBits = neededTableBits(rows * columns);
+    if (tableBits < neededBits){
+      System.err.println("The positions may need up to 2^" + neededBits + " slots, the table has 2^" + tableBits
+        + ": if it fills up, pass more table bits (at most " + MAX_TABLE_BITS + ") with a larger heap (-Xmx)");
+    }
+
+    Enumerator enumerator = new Enumerator(rows, columns, wins, continueAfterWin, tableBits);
+    long start = System.nanoTime();
+    long positions = enumerator.run(threads);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.out.println(rows + "x" + columns + "/" + wins + (continueAfterWin ? " (continuing after a win)" : "")
+      + ": " + positions + " positions");
+    for (GameState state : GameState.values()){
+      System.out.println("  " + state + ": " + enumerator.count(state));
+    }
+    System.out.printf("%.2f s on %d threads, %.0f positions/s%n", seconds, threads, positions / seconds);
+    System.out.printf("table: %d MB, peak heap: %d MB%n", enumerator.seen.bytes() >> 20, peakHeap() >> 20);
+  }
+
+  /**
+   * A table large enough for every board of the provided number of
+   * cells, or the largest table that fits in half of the heap.
+   */
+  static int defaultTableBits(int numCells) {
+    return Math.min(neededTableBits(numCells), maxTableBits(Runtime.getRuntime().maxMemory()));
+  }
+
+  /**
+   * The table bits to hold every board of the provided number of
+   * cells that has as many Xs as Os or one more, at most half full.
+   */
+  static int neededTableBits(int numCells) {
+    double boards = 0;
+    for (int rounds = 0; rounds <= numCells; rounds++){
+      boards += binomial(numCells, rounds) * binomial(rounds, (rounds + 1) / 2);
+    }
+    int bits = 1;
+    while (Math.scalb(1.0, bits) < 2 * boards){
+      bits += 1;
+    }
+    return bits;
+  }
+
+  /**
+   * The most table bits whose slots take at most half of a heap
+   * of the provided size.
+   */
+  static int maxTableBits(long maxMemory) {
+    long slots = Math.max(maxMemory / 2 / 8, 2);
+    return Math.min(MAX_TABLE_BITS, 63 - Long.numberOfLeadingZeros(slots));
+  }
+
+  private static double binomial(int n, int k) {
+    double value = 1;
+    for (int i = 1; i <= k; i++){
+      value = value * (n - k + i) / i;
+    }
+    return value;
+  }
+
+  /**
+   * Walks the whole game tree.
+   *
+   * @param threads the number of threads to walk it with
+   * @return the number of different positions, the empty board included
+   */
+  public long run(int threads) {
+    TicTacToe game = new TicTacToe(this.numRows, this.numColumns, this.sizeToWin);
+    found(0, game.gameState);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(new Walk(game, 0));
+    } finally {
+      pool.shutdown();
+    }
+    return this.seen.size();
+  }
+
+  /**
+   * The number of positions found in the provided state.
+   */
+  public long count(GameState state) {
+    return this.counts[state.ordinal()].sum();
+  }
+
+  /**
+   * Adds a position to the set, and counts it if it is new.
+   *
+   * @return true if the position had not been found before
+   */
+  private boolean found(long board, GameState state) {
+    if (!this.seen.add(board * 4 + state.ordinal())){
+      return false;
+    }
+    this.counts[state.ordinal()].increment();
+    return true;
+  }
+
+  /**
+   * Can moves be played from a position in this state?
+   */
+  private boolean goesOn(TicTacToe game) {
+    if (game.gameState == GameState.PLAYING){
+      return true;
+    }
+    return this.continueAfterWin && game.numRounds < game.numCells;
+  }
+
+  /**
+   * The walk of the subtree of a position, split in one task per
+   * move close to the root, and walked sequentially deeper down.
+   */
+  private final class Walk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final TicTacToe game;
+    private final long board;
+
+    Walk(TicTacToe game, long board) {
+      this.game = game;
+      this.board = board;
+    }
+
+    @Override
+    protected void compute() {
+      TicTacToe g = this.game;
+      if (g.numRounds >= SPLIT_ROUNDS){
+        walk(g, this.board);
+        return;
+      }
+      List<Walk> children = new ArrayList<Walk>();
+      long digit = g.nextPlayer() == CellValue.X ? 1 : 2;
+      for (int cell = 0; cell < g.numCells; cell++){
+        if (g.board[cell] != ' '){
+          continue;
+        }
+        TicTacToe child = new TicTacToe(g);
+        child.makeMove(cell + 1);
+        long childBoard = this.board + digit * powers[cell];
+        if (found(childBoard, child.gameState) && goesOn(child)){
+          children.add(new Walk(child, childBoard));
+        }
+      }
+      invokeAll(children);
+    }
+
+    /**
+     * Depth first walk on a single game, with undo.
+     */
+    private void walk(TicTacToe g, long board) {
+      long digit = g.nextPlayer() == CellValue.X ? 1 : 2;
+      for (int cell = 0; cell < g.numCells; cell++){
+        if (g.board[cell] != ' '){
+          continue;
+        }
+        g.makeMove(cell + 1);
+        long childBoard = board + digit * powers[cell];
+        if (found(childBoard, g.gameState) && goesOn(g)){
+          walk(g, childBoard);
+        }
+        g.undo();
+      }
+    }
+  }
+
+  /**
+   * The largest heap used since the start of the program,
+   * summed over the heap memory pools.
+   */
+  static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null){
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  /**
+   * A set of non-negative longs that threads add to without locking:
+   * open addressing with linear probing in a single AtomicLongArray,
+   * each slot holding a value plus one, or 0 when it is free.  A
+   * slot is claimed with a compare-and-set, so two threads adding
+   * the same value find each other's value and only one of them
+   * sees it as new.
+   */
+  static final class LongSet {
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final LongAdder size = new LongAdder();
+
+    LongSet(int bits) {
+      this.slots = new AtomicLongArray(1 << bits);
+      this.mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @return true if the value was not in the set
+     */
+    boolean add(long value) {
+      long stored = value + 1;
+      long h = stored * 0x9E3779B97F4A7C15L;
+      int i = (int) (h >>> 32) & this.mask;
+      for (int probes = 0; probes <= this.mask; probes++){
+        long current = this.slots.get(i);
+        if (current == stored){
+          return false;
+        }
+        if (current == 0){
+          if (this.slots.compareAndSet(i, 0, stored)){
+            this.size.increment();
+            return true;
+          }
+          //another thread took the slot: look at it again, it may be the same value.
+          probes -= 1;
+          continue;
+        }
+        i = (i + 1) & this.mask;
+      }
+      throw new IllegalStateException("The set of positions is full with 2^" + Integer.numberOfTrailingZeros(this.slots.length())
+        + " slots: pass more table bits (at most " + MAX_TABLE_BITS + ") after the threads, with a larger heap (-Xmx)");
+    }
+
+    long size() {
+      return this.size.sum();
+    }
+
+    long bytes() {
+      return 8L * this.slots.length();
+    }
+  }
+}
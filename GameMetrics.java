@@ -0,0 +1,293 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * The class <b>GameMetrics</b> measures where the time goes inside
+ * TicTacToe, for all the games of the process:
+ *
+ *  the latency of play(), in a histogram,
+ *  the winning lines checked after each move, per direction,
+ *  the moves rejected, per reason,
+ *  the number of calls to toString() and the time spent in them.
+ *
+ * Metrics are off unless the program is started with
+ * -Dtictactoe.metrics=true.  ENABLED is a constant, so when it is
+ * false the JIT removes the code recording the metrics and TicTacToe
+ * runs as if it was not there.  When enabled, the counters are
+ * LongAdders so that the games of a GameServer can record them from
+ * many threads, they are published over JMX, and TicTacToe.toDebug()
+ * ends with them.
+ *
+ * The latency histogram is log-linear, like an HDR histogram: each
+ * power of two is split in 16 buckets, so a percentile is read with
+ * a relative error of at most 1/16, whatever its magnitude.
+ */
+public class GameMetrics implements GameMetricsMBean {
+
+  /**
+   * Are metrics recorded?
+   */
+  static final boolean ENABLED = Boolean.getBoolean("tictactoe.metrics");
+
+  /**
+   * The number of buckets per power of two, as a number of bits.
+   */
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * The reasons a move is rejected.
+   */
+  static final int OFF_BOARD = 0;
+  static final int OCCUPIED_BY_X = 1;
+  static final int OCCUPIED_BY_O = 2;
+
+  private static final LongAdder[] latencies = new LongAdder[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+  private static final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+  private static final LongAdder[] rejections = new LongAdder[3];
+  private static final LongAdder winChecks = new LongAdder();
+  private static final LongAdder[] linesChecked = new LongAdder[BoardLayout.ROW_STEP.length];
+  private static final LongAdder toStringCalls = new LongAdder();
+  private static final LongAdder toStringNanos = new LongAdder();
+
+  static {
+    for (int i = 0; i < latencies.length; i++){
+      latencies[i] = new LongAdder();
+    }
+    for (int i = 0; i < rejections.length; i++){
+      rejections[i] = new LongAdder();
+    }
+    for (int i = 0; i < linesChecked.length; i++){
+      linesChecked[i] = new LongAdder();
+    }
+    if (ENABLED){
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new GameMetrics(),
+          new ObjectName("tictactoe:type=GameMetrics"));
+      } catch (Exception e) {
+        System.err.println("GameMetrics not published over JMX: " + e);
+      }
+    }
+  }
+
+  /**
+   * Records the duration of a call to play().
+   *
+   * @param nanos the duration in nanoseconds
+   */
+  static void recordPlay(long nanos) {
+    latencies[bucket(nanos)].increment();
+    maxLatency.accumulate(nanos);
+  }
+
+  /**
+   * Records a move that was rejected.
+   *
+   * @param reason OFF_BOARD, OCCUPIED_BY_X or OCCUPIED_BY_O
+   */
+  static void recordRejection(int reason) {
+    rejections[reason].increment();
+  }
+
+  /**
+   * Records the lines checked for a winner after a move.
+   *
+   * @param layout the layout of the game
+   * @param cell the 0-based cell played
+   * @param checked how many of the lines through the cell were checked
+   */
+  static void recordWinCheck(BoardLayout layout, int cell, int checked) {
+    winChecks.increment();
+    int start = layout.cellLineStart[cell];
+    for (int i = start; i < start + checked; i++){
+      linesChecked[layout.directionOf(layout.cellLines[i])].increment();
+    }
+  }
+
+  /**
+   * Records a call to toString().
+   *
+   * @param nanos the duration in nanoseconds
+   */
+  static void recordToString(long nanos) {
+    toStringCalls.increment();
+    toStringNanos.add(nanos);
+  }
+
+  /**
+   * The bucket of a latency: values below 16 have their own
+   * bucket, larger ones are split in 16 buckets per power of two.
+   */
+  static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS){
+      return (int) Math.max(nanos, 0);
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+    int sub = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * The largest latency counted in a bucket.
+   */
+  static long bucketMax(int bucket) {
+    if (bucket < SUB_BUCKETS){
+      return bucket;
+    }
+    int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long sub = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * The latency of play() below which the provided fraction of the
+   * calls are, rounded up to the end of its bucket.
+   *
+   * @param fraction between 0 and 1
+   * @return the latency in nanoseconds, or 0 if play() was not called
+   */
+  static long playPercentile(double fraction) {
+    long[] counts = new long[latencies.length];
+    long total = 0;
+    for (int i = 0; i < counts.length; i++){
+      counts[i] = latencies[i].sum();
+      total += counts[i];
+    }
+    if (total == 0){
+      return 0;
+    }
+    long rank = (long) Math.ceil(fraction * total);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++){
+      seen += counts[i];
+      if (seen >= Math.max(rank, 1)){
+        return Math.min(bucketMax(i), maxLatency.get());
+      }
+    }
+    return maxLatency.get();
+  }
+
+  /**
+   * Appends every metric, one "name=value" per line.
+   *
+   * @param out the builder to append to
+   * @return the same builder
+   */
+  static StringBuilder appendTo(StringBuilder out) {
+    GameMetrics metrics = new GameMetrics();
+    out.append("play.count=").append(metrics.getPlays()).append('\n');
+    out.append("play.latency.p50.ns=").append(metrics.getPlayLatencyP50()).append('\n');
+    out.append("play.latency.p99.ns=").append(metrics.getPlayLatencyP99()).append('\n');
+    out.append("play.latency.p999.ns=").append(metrics.getPlayLatencyP999()).append('\n');
+    out.append("play.latency.max.ns=").append(metrics.getPlayLatencyMax()).append('\n');
+    out.append("play.rejected.offBoard=").append(metrics.getRejectedOffBoard()).append('\n');
+    out.append("play.rejected.occupiedByX=").append(metrics.getRejectedOccupiedByX()).append('\n');
+    out.append("play.rejected.occupiedByO=").append(metrics.getRejectedOccupiedByO()).append('\n');
+    out.append("winCheck.count=").append(metrics.getWinChecks()).append('\n');
+    out.append("winCheck.lines.horizontal=").append(metrics.getLinesCheckedHorizontal()).append('\n');
+    out.append("winCheck.lines.vertical=").append(metrics.getLinesCheckedVertical()).append('\n');
+    out.append("winCheck.lines.forwardDiagonal=").append(metrics.getLinesCheckedForwardDiagonal()).append('\n');
+    out.append("winCheck.lines.backwardDiagonal=").append(metrics.getLinesCheckedBackwardDiagonal()).append('\n');
+    out.append("toString.count=").append(metrics.getToStringCalls()).append('\n');
+    out.append("toString.ns=").append(metrics.getToStringNanos()).append('\n');
+    return out;
+  }
+
+  @Override
+  public long getPlays() {
+    long total = 0;
+    for (LongAdder count : latencies){
+      total += count.sum();
+    }
+    return total;
+  }
+
+  @Override
+  public long getPlayLatencyP50() {
+    return playPercentile(0.5);
+  }
+
+  @Override
+  public long getPlayLatencyP99() {
+    return playPercentile(0.99);
+  }
+
+  @Override
+  public long getPlayLatencyP999() {
+    return playPercentile(0.999);
+  }
+
+  @Override
+  public long getPlayLatencyMax() {
+    return maxLatency.get();
+  }
+
+  @Override
+  public long getRejectedOffBoard() {
+    return rejections[OFF_BOARD].sum();
+  }
+
+  @Override
+  public long getRejectedOccupiedByX() {
+    return rejections[OCCUPIED_BY_X].sum();
+  }
+
+  @Override
+  public long getRejectedOccupiedByO() {
+    return rejections[OCCUPIED_BY_O].sum();
+  }
+
+  @Override
+  public long getWinChecks() {
+    return winChecks.sum();
+  }
+
+  @Override
+  public long getLinesCheckedHorizontal() {
+    return linesChecked[0].sum();
+  }
+
+  @Override
+  public long getLinesCheckedVertical() {
+    return linesChecked[1].sum();
+  }
+
+  @Override
+  public long getLinesCheckedForwardDiagonal() {
+    return linesChecked[2].sum();
+  }
+
+  @Override
+  public long getLinesCheckedBackwardDiagonal() {
+    return linesChecked[3].sum();
+  }
+
+  @Override
+  public long getToStringCalls() {
+    return toStringCalls.sum();
+  }
+
+  @Override
+  public long getToStringNanos() {
+    return toStringNanos.sum();
+  }
+
+  @Override
+  public void reset() {
+    for (LongAdder count : latencies){
+      count.reset();
+    }
+    maxLatency.reset();
+    for (LongAdder count : rejections){
+      count.reset();
+    }
+    winChecks.reset();
+    for (LongAdder count : linesChecked){
+      count.reset();
+    }
+    toStringCalls.reset();
+    toStringNanos.reset();
+  }
+}
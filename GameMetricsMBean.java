@@ -0,0 +1,39 @@
+/**
+ * The management interface of GameMetrics, as seen through JMX
+ * under the name "tictactoe:type=GameMetrics".  Latencies and
+ * times are in nanoseconds.
+ */
+public interface GameMetricsMBean {
+
+  long getPlays();
+
+  long getPlayLatencyP50();
+
+  long getPlayLatencyP99();
+
+  long getPlayLatencyP999();
+
+  long getPlayLatencyMax();
+
+  long getRejectedOffBoard();
+
+  long getRejectedOccupiedByX();
+
+  long getRejectedOccupiedByO();
+
+  long getWinChecks();
+
+  long getLinesCheckedHorizontal();
+
+  long getLinesCheckedVertical();
+
+  long getLinesCheckedForwardDiagonal();
+
+  long getLinesCheckedBackwardDiagonal();
+
+  long getToStringCalls();
+
+  long getToStringNanos();
+
+  void reset();
+}
@@ -0,0 +1,104 @@
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * The class <b>GamePool</b> keeps finished games so that new games
+ * reuse them, through TicTacToe.reset(), instead of allocating their
+ * arrays again.  Programs playing many games, such as a GameServer
+ * or a simulation, then allocate almost nothing once the pool holds
+ * as many games as they play at the same time.
+ *
+ * Each thread keeps a few games of its own, taken and given back
+ * without any synchronization.  Beyond that, games go to a bounded
+ * queue shared by all the threads, so that a game released on one
+ * thread can be acquired on another (a GameServer creates and ends
+ * a game on whichever reactor gets the request).  Games released
+ * when the pool is full are left to the garbage collector.
+ *
+ * A game must not be used anymore once it is released.
+ */
+public class GamePool {
+
+  /**
+   * The games each thread keeps for itself.
+   */
+  static final int LOCAL_CAPACITY = 8;
+
+  /**
+   * Games larger than this are not kept: a game keeps its arrays
+   * when reset to a smaller board, and a few huge games would
+   * hold on to most of the memory of the pool.
+   */
+  static final int MAX_POOLED_CELLS = 1 << 16;
+
+  private final ThreadLocal<Stack> local = ThreadLocal.withInitial(Stack::new);
+  private final ArrayBlockingQueue<TicTacToe> shared;
+
+  /**
+   * A pool sharing up to the provided number of games between
+   * threads, on top of the games each thread keeps.
+   *
+   * @param sharedCapacity the number of games in the shared queue
+   */
+  public GamePool(int sharedCapacity) {
+    this.shared = new ArrayBlockingQueue<TicTacToe>(Math.max(sharedCapacity, 1));
+  }
+
+  /**
+   * A new game: a released game reset to the provided
+   * dimensions, or a new TicTacToe if the pool is empty.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win
+   * @return an empty game
+   */
+  public TicTacToe acquire(int aNumRows, int aNumColumns, int aSizeToWin) {
+    Stack stack = this.local.get();
+    TicTacToe game;
+    if (stack.size > 0){
+      stack.size -= 1;
+      game = stack.games[stack.size];
+      stack.games[stack.size] = null;
+    } else {
+      game = this.shared.poll();
+    }
+    if (game == null){
+      return new TicTacToe(aNumRows, aNumColumns, aSizeToWin);
+    }
+    game.reset(aNumRows, aNumColumns, aSizeToWin);
+    return game;
+  }
+
+  /**
+   * Gives a game back to the pool.
+   *
+   * @param game a game that is not used anymore
+   */
+  public void release(TicTacToe game) {
+    if (game.board.length > MAX_POOLED_CELLS){
+      return;
+    }
+    Stack stack = this.local.get();
+    if (stack.size < LOCAL_CAPACITY){
+      stack.games[stack.size] = game;
+      stack.size += 1;
+    } else {
+      this.shared.offer(game);
+    }
+  }
+
+  /**
+   * The number of games in the shared queue.
+   */
+  public int sharedSize() {
+    return this.shared.size();
+  }
+
+  /**
+   * The games kept by a thread.
+   */
+  private static final class Stack {
+    final TicTacToe[] games = new TicTacToe[LOCAL_CAPACITY];
+    int size;
+  }
+}
@@ -0,0 +1,113 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class <b>GameRegistry</b> holds the games of a GameServer,
+ * each with a numeric id.
+ *
+ * TicTacToe is not thread-safe, so every access to a game must be
+ * done while holding its lock, given by lockFor().  The locks are
+ * striped: a fixed array of locks is shared by all the games, each
+ * game using the lock picked by its id.  Two games only wait for
+ * each other when they share a stripe, which stays rare with many
+ * more stripes than threads, and no lock is allocated per game.
+ */
+public class GameRegistry {
+
+  /**
+   * The number of locks, a power of two.
+   */
+  static final int STRIPES = 1024;
+
+  private final ConcurrentHashMap<Long, TicTacToe> games = new ConcurrentHashMap<Long, TicTacToe>();
+  private final Object[] locks = new Object[STRIPES];
+  private final AtomicLong lastId = new AtomicLong();
+
+  /**
+   * The games that ended, reused by the games created next.
+   */
+  private final GamePool pool = new GamePool(4096);
+
+  public GameRegistry() {
+    for (int i = 0; i < STRIPES; i++){
+      this.locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Creates a new game.
+   *
+   * @param numRows the number of lines in the game
+   * @param numColumns the number of columns in the game
+   * @param sizeToWin the number of cells that must be aligned to win
+   * @return the id of the new game
+   */
+  public long create(int numRows, int numColumns, int sizeToWin) {
+    TicTacToe game = this.pool.acquire(numRows, numColumns, sizeToWin);
+    long id = this.lastId.incrementAndGet();
+    this.games.put(id, game);
+    return id;
+  }
+
+  /**
+   * The game with the provided id.  Its lock must be held
+   * while the game is used.
+   *
+   * @param id the id of the game
+   * @return the game, or null if there is no such game
+   */
+  public TicTacToe get(long id) {
+    return this.games.get(id);
+  }
+
+  /**
+   * Starts a game again, with the same dimensions, in place.
+   * The lock of the game must be held.
+   *
+   * @param id the id of the game
+   * @return the game, or null if there is no such game
+   */
+  public TicTacToe restart(long id) {
+    TicTacToe game = this.games.get(id);
+    if (game == null){
+      return null;
+    }
+    game.reset();
+    return game;
+  }
+
+  /**
+   * Forgets a game, and gives it back to the pool for the
+   * games created next.  The lock of the game must be held.
+   *
+   * @param id the id of the game
+   * @return false if there was no such game
+   */
+  public boolean remove(long id) {
+    TicTacToe game = this.games.remove(id);
+    if (game == null){
+      return false;
+    }
+    this.pool.release(game);
+    return true;
+  }
+
+  /**
+   * The number of games.
+   */
+  public int size() {
+    return this.games.size();
+  }
+
+  /**
+   * The lock guarding the game with the provided id.
+   *
+   * @param id the id of the game
+   * @return the lock to synchronize on
+   */
+  public Object lockFor(long id) {
+    //ids are consecutive, so their bits are mixed to spread neighbours over the stripes.
+    long h = id * 0x9E3779B97F4A7C15L;
+    return this.locks[(int) (h >>> 40) & (STRIPES - 1)];
+  }
+}
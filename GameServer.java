@@ -0,0 +1,403 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The class <b>GameServer</b> hosts many TicTacToe games at once,
+ * played over TCP with a line protocol.  Each request is one line,
+ * and each response starts with a line beginning with OK or ERR:
+ *
+ *  create rows columns win   OK id
+ *  play id position          OK state   (PLAYING, DRAW, XWIN or OWIN)
+ *  show id                   OK n, then the n lines of the board and the prompt
+ *  debug id                  OK n, then the n lines of toDebug()
+ *  restart id                OK
+ *  end id                    OK
+ *
+ * An invalid move, an unknown game or an unknown command gets
+ * "ERR message".  Requests of one connection are answered in order,
+ * and may be sent without waiting for the previous responses.
+ *
+ * Requests are executed on the reactors, so a request must never
+ * take long: a connection keeps at most MAX_GAMES_PER_CONNECTION
+ * games, whose tables (see BoardLayout) must have at most
+ * MAX_LAYOUT_ENTRIES entries, and the games a connection created
+ * are ended when it closes.
+ *
+ * Connections are spread over a few selector threads ("reactors")
+ * that read, execute and answer the requests without blocking.
+ * The games are kept in a GameRegistry: a request only holds the
+ * lock of its own game, and only while it runs, so a busy game
+ * never holds back the others.
+ */
+public class GameServer implements Closeable {
+
+  /**
+   * The longest request accepted: a longer line is
+   * discarded and answered with "ERR Request too long".
+   */
+  static final int MAX_LINE = 256;
+
+  /**
+   * The largest tables of the games created, such as those of a
+   * 100x100 board to win with 5: they are built in milliseconds,
+   * then stay in the cache of BoardLayout for the next games.
+   */
+  static final long MAX_LAYOUT_ENTRIES = 1 << 20;
+
+  /**
+   * The most games a connection keeps at once.
+   */
+  static final int MAX_GAMES_PER_CONNECTION = 1024;
+
+  private final GameRegistry registry;
+  private final ServerSocketChannel server;
+  private final Reactor[] reactors;
+  private volatile boolean closed;
+
+  /**
+   * A server listening on the provided port of localhost.
+   *
+   * @param port the port to listen to, or 0 for any free port
+   * @param numReactors the number of selector threads
+   */
+  public GameServer(int port, int numReactors) throws IOException {
+    this.registry = new GameRegistry();
+    this.server = ServerSocketChannel.open();
+    this.server.bind(new InetSocketAddress("localhost", port), 1024);
+    this.reactors = new Reactor[numReactors];
+    for (int i = 0; i < numReactors; i++){
+      this.reactors[i] = new Reactor();
+      Thread thread = new Thread(this.reactors[i], "reactor-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Runs a server from the command line parameters of Main:
+   * --server [port] [reactors].  The default port is 7777,
+   * with one reactor per processor.
+   *
+   * @param args command lines parameters, starting with --server
+   */
+  public static void run(String[] args) throws IOException {
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+    int reactors = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    try (GameServer server = new GameServer(port, reactors)) {
+      System.out.println("Listening on port " + server.port());
+      server.serve();
+    }
+  }
+
+  /**
+   * The port the server listens to.
+   */
+  public int port() throws IOException {
+    return ((InetSocketAddress) this.server.getLocalAddress()).getPort();
+  }
+
+  /**
+   * The games of the server.
+   */
+  public GameRegistry registry() {
+    return this.registry;
+  }
+
+  /**
+   * Accepts connections until the server is closed, handing
+   * each of them to the reactors in turn.
+   */
+  public void serve() throws IOException {
+    int next = 0;
+    while (!this.closed){
+      SocketChannel channel;
+      try {
+        channel = this.server.accept();
+      } catch (ClosedChannelException e) {
+        return;
+      }
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      this.reactors[next].add(channel);
+      next = (next + 1) % this.reactors.length;
+    }
+  }
+
+  /**
+   * Stops accepting connections and closes the ones open.
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.server.close();
+    for (Reactor reactor : this.reactors){
+      reactor.selector.wakeup();
+    }
+  }
+
+  /**
+   * Executes one request and appends its response.
+   *
+   * @param request the request line, without its newline
+   * @param owned the ids of the games created by the connection
+   * @param out where to append the response lines
+   */
+  void execute(String request, Set<Long> owned, StringBuilder out) {
+    String[] words = request.trim().split("\\s+");
+    try {
+      String command = words[0];
+      if ("create".equals(command) && words.length == 4){
+        int rows = Integer.parseInt(words[1]);
+        int columns = Integer.parseInt(words[2]);
+        int wins = Integer.parseInt(words[3]);
+        if (rows < 1 || columns < 1 || wins < 1
+            || BoardLayout.estimateEntries(rows, columns, wins) > MAX_LAYOUT_ENTRIES){
+          out.append("ERR Invalid dimensions\n");
+          return;
+        }
+        if (owned.size() >= MAX_GAMES_PER_CONNECTION){
+          //the games ended by other connections do not count.
+          owned.removeIf(id -> this.registry.get(id) == null);
+          if (owned.size() >= MAX_GAMES_PER_CONNECTION){
+            out.append("ERR Too many games\n");
+            return;
+          }
+        }
+        long id = this.registry.create(rows, columns, wins);
+        owned.add(id);
+        out.append("OK ").append(id).append('\n');
+        return;
+      }
+      if (words.length < 2){
+        out.append("ERR Unknown command\n");
+        return;
+      }
+      long id = Long.parseLong(words[1]);
+      synchronized (this.registry.lockFor(id)) {
+        TicTacToe game = this.registry.get(id);
+        if (game == null){
+          out.append("ERR Unknown game ").append(id).append('\n');
+        } else if ("play".equals(command) && words.length == 3){
+          int position = Integer.parseInt(words[2]);
+          PlayResult result = game.tryPlay(position);
+          if (!result.isAccepted()){
+            out.append("ERR ").append(result.message(position, game.numCells)).append('\n');
+          } else {
+            out.append("OK ").append(game.gameState.name()).append('\n');
+          }
+        } else if ("show".equals(command) && words.length == 2){
+          String[] view = game.show();
+          appendLines(out, view[0] + "\n" + view[1]);
+        } else if ("debug".equals(command) && words.length == 2){
+          appendLines(out, game.toDebug());
+        } else if ("restart".equals(command) && words.length == 2){
+          this.registry.restart(id);
+          out.append("OK\n");
+        } else if ("end".equals(command) && words.length == 2){
+          this.registry.remove(id);
+          owned.remove(id);
+          out.append("OK\n");
+        } else {
+          out.append("ERR Unknown command\n");
+        }
+      }
+    } catch (NumberFormatException e) {
+      out.append("ERR Invalid number\n");
+    }
+  }
+
+  /**
+   * Ends the games of a connection that closed.
+   *
+   * @param owned the ids of the games created by the connection
+   */
+  void endAll(Set<Long> owned) {
+    for (long id : owned){
+      synchronized (this.registry.lockFor(id)) {
+        this.registry.remove(id);
+      }
+    }
+    owned.clear();
+  }
+
+  /**
+   * Appends "OK n" and the n lines of a text.
+   */
+  private static void appendLines(StringBuilder out, String text) {
+    if (text.endsWith("\n")){
+      text = text.substring(0, text.length() - 1);
+    }
+    String[] lines = text.split("\n", -1);
+    out.append("OK ").append(lines.length).append('\n');
+    for (String line : lines){
+      out.append(line).append('\n');
+    }
+  }
+
+  /**
+   * A selector thread serving some of the connections.
+   */
+  private final class Reactor implements Runnable {
+    final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> added = new ConcurrentLinkedQueue<SocketChannel>();
+
+    Reactor() throws IOException {
+      this.selector = Selector.open();
+    }
+
+    void add(SocketChannel channel) {
+      this.added.add(channel);
+      this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!GameServer.this.closed){
+          this.selector.select();
+          SocketChannel channel;
+          while ((channel = this.added.poll()) != null){
+            channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+          }
+          Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+          while (keys.hasNext()){
+            SelectionKey key = keys.next();
+            keys.remove();
+            Connection connection = (Connection) key.attachment();
+            try {
+              connection.ready(key);
+            } catch (IOException e) {
+              key.cancel();
+              try {
+                connection.close();
+              } catch (IOException closing) {
+                //the games are ended before the channel is closed: only the channel failed.
+              }
+            }
+          }
+        }
+      } catch (IOException e) {
+        System.err.println("Reactor stopped: " + e);
+      } finally {
+        for (SelectionKey key : this.selector.keys()){
+          try {
+            ((Connection) key.attachment()).close();
+          } catch (IOException e) {
+            //closing anyway
+          }
+        }
+        try {
+          this.selector.close();
+        } catch (IOException e) {
+          //closing anyway
+        }
+      }
+    }
+  }
+
+  /**
+   * One client: the request being read, the responses
+   * waiting to be written, and the games it created.
+   */
+  private final class Connection {
+    final SocketChannel channel;
+    private final Set<Long> games = new HashSet<Long>();
+    private final ByteBuffer input = ByteBuffer.allocate(8192);
+    private final StringBuilder line = new StringBuilder();
+    private boolean overflowed;
+    private final StringBuilder responses = new StringBuilder();
+    private ByteBuffer output = ByteBuffer.allocate(8192);
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+      this.output.flip();
+    }
+
+    /**
+     * Reads and executes the requests that arrived, then
+     * writes as much of the responses as the socket takes.
+     */
+    void ready(SelectionKey key) throws IOException {
+      if (key.isReadable()){
+        int read = this.channel.read(this.input);
+        if (read < 0){
+          key.cancel();
+          close();
+          return;
+        }
+        this.input.flip();
+        while (this.input.hasRemaining()){
+          char c = (char) (this.input.get() & 0xFF);
+          if (c == '\n'){
+            if (this.overflowed){
+              this.responses.append("ERR Request too long\n");
+              this.overflowed = false;
+            } else {
+              execute(this.line.toString(), this.games, this.responses);
+            }
+            this.line.setLength(0);
+          } else if (c != '\r' && !this.overflowed){
+            if (this.line.length() < MAX_LINE){
+              this.line.append(c);
+            } else {
+              //the rest of the line is discarded, up to its newline.
+              this.overflowed = true;
+            }
+          }
+        }
+        this.input.clear();
+        encode();
+      }
+      this.channel.write(this.output);
+
+      //while responses can not be sent, no more requests are read.
+      if (this.output.hasRemaining()){
+        key.interestOps(SelectionKey.OP_WRITE);
+      } else {
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    }
+
+    /**
+     * Closes the connection and ends its games.
+     */
+    void close() throws IOException {
+      endAll(this.games);
+      this.channel.close();
+    }
+
+    /**
+     * Moves the pending responses to the output buffer.
+     */
+    private void encode() {
+      int length = this.responses.length();
+      if (length == 0){
+        return;
+      }
+      this.output.compact();
+      if (this.output.remaining() < length){
+        ByteBuffer bigger = ByteBuffer.allocate(this.output.position() + length);
+        this.output.flip();
+        bigger.put(this.output);
+        this.output = bigger;
+      }
+      for (int i = 0; i < length; i++){
+        this.output.put((byte) this.responses.charAt(i));
+      }
+      this.output.flip();
+      this.responses.setLength(0);
+    }
+  }
+}
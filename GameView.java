@@ -0,0 +1,62 @@
+/**
+ * The interface <b>GameView</b> is a read-only view of a Tic Tac Toe
+ * game, the game a Player is asked to move in.  Both TicTacToe and
+ * ImmutableTicTacToe are views; nothing in this interface changes
+ * the game it is called on.
+ */
+public interface GameView {
+
+  /**
+   * The number of rows of the board.
+   */
+  int numRows();
+
+  /**
+   * The number of columns of the board.
+   */
+  int numColumns();
+
+  /**
+   * The number of cells that must be aligned to win.
+   */
+  int sizeToWin();
+
+  /**
+   * The number of moves played so far.
+   */
+  int numRounds();
+
+  /**
+   * The state of the game.
+   */
+  GameState gameState();
+
+  /**
+   * Who should play next (X or O).
+   */
+  CellValue nextPlayer();
+
+  /**
+   * The value at the provided 1-based position, INVALID
+   * if it is off the board.
+   */
+  CellValue valueAt(int position);
+
+  /**
+   * The value at the provided 1-based row and column, INVALID
+   * if it is off the board.
+   */
+  CellValue valueAt(int row, int column);
+
+  /**
+   * The Zobrist hash of the board.
+   */
+  long hash();
+
+  /**
+   * A mutable copy of the game, for a player to search from.
+   *
+   * @return a new TicTacToe with the same board and state
+   */
+  TicTacToe toTicTacToe();
+}
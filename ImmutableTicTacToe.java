@@ -0,0 +1,310 @@
+/**
+ * The class <b>ImmutableTicTacToe</b> is a Tic Tac Toe game that
+ * never changes: play() returns a new game with the move played, and
+ * leaves the game it was called on as it was.  Any number of threads
+ * can read the same instance without locking, and keeping an older
+ * instance is enough to go back to it.
+ *
+ * The board is stored as bitboards (one bit per cell and per player,
+ * as in TicTacToe) cut in chunks of CHUNK_WORDS words.  A move copies
+ * the array of chunks and the one chunk it changes; every other chunk
+ * is shared with the previous game.  The rules are the rules of
+ * TicTacToe: the first player to align sizeToWin cells wins, and the
+ * game can continue after a win.
+ */
+public final class ImmutableTicTacToe implements GameView {
+
+  /**
+   * The number of 64 bits words per chunk (512 cells).
+   */
+  static final int CHUNK_WORDS = 8;
+  static final int CHUNK_SHIFT = 3;
+
+  private final BoardLayout layout;
+  private final long[][] xChunks;
+  private final long[][] oChunks;
+  private final int numRounds;
+  private final GameState gameState;
+  private final CellValue currentPlayer;
+  private final long hash;
+
+  /**
+   * An empty game of the provided dimensions.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   */
+  public ImmutableTicTacToe(int aNumRows, int aNumColumns, int aSizeToWin) {
+    this(BoardLayout.forConfig(aNumRows, aNumColumns, aSizeToWin));
+  }
+
+  private ImmutableTicTacToe(BoardLayout layout) {
+    this.layout = layout;
+    int numChunks = (layout.numWords + CHUNK_WORDS - 1) >>> CHUNK_SHIFT;
+    //every chunk of an empty board is the same empty chunk.
+    long[] empty = new long[CHUNK_WORDS];
+    this.xChunks = new long[numChunks][];
+    this.oChunks = new long[numChunks][];
+    java.util.Arrays.fill(this.xChunks, empty);
+    java.util.Arrays.fill(this.oChunks, empty);
+    this.numRounds = 0;
+    this.gameState = GameState.PLAYING;
+    this.currentPlayer = CellValue.EMPTY;
+    this.hash = 0;
+  }
+
+  private ImmutableTicTacToe(BoardLayout layout, long[][] xChunks, long[][] oChunks, int numRounds,
+      GameState gameState, CellValue currentPlayer, long hash) {
+    this.layout = layout;
+    this.xChunks = xChunks;
+    this.oChunks = oChunks;
+    this.numRounds = numRounds;
+    this.gameState = gameState;
+    this.currentPlayer = currentPlayer;
+    this.hash = hash;
+  }
+
+  /**
+   * The immutable copy of a game.  The moves history of the game
+   * is not copied.
+   *
+   * @param game the game to copy
+   * @return a game with the same board and state
+   */
+  public static ImmutableTicTacToe of(TicTacToe game) {
+    BoardLayout layout = game.layout;
+    int numChunks = (layout.numWords + CHUNK_WORDS - 1) >>> CHUNK_SHIFT;
+    long[][] xs = new long[numChunks][CHUNK_WORDS];
+    long[][] os = new long[numChunks][CHUNK_WORDS];
+    for (int w = 0; w < layout.numWords; w++){
+      xs[w >>> CHUNK_SHIFT][w & (CHUNK_WORDS - 1)] = game.xBits[w];
+      os[w >>> CHUNK_SHIFT][w & (CHUNK_WORDS - 1)] = game.oBits[w];
+    }
+    return new ImmutableTicTacToe(layout, xs, os, game.numRounds, game.gameState, game.currentPlayer, game.hash);
+  }
+
+  /**
+   * A mutable copy of this game, which can be played and undone
+   * from this position on.
+   *
+   * @return a new TicTacToe with the same board and state
+   */
+  public TicTacToe toTicTacToe() {
+    return toTicTacToe(null);
+  }
+
+  /**
+   * Copies this game into a mutable game, resetting and reusing
+   * the provided one, as Snapshot.read() does.
+   *
+   * @param reuse a game to copy into, or null
+   * @return the game copied into: reuse, or a new game
+   */
+  public TicTacToe toTicTacToe(TicTacToe reuse) {
+    BoardLayout l = this.layout;
+    TicTacToe game = reuse;
+    if (game == null){
+      game = new TicTacToe(l.numRows, l.numColumns, l.sizeToWin);
+    } else {
+      game.reset(l.numRows, l.numColumns, l.sizeToWin);
+    }
+    for (int w = 0; w < l.numWords; w++){
+      for (long bits = word(this.xChunks, w); bits != 0; bits &= bits - 1){
+        game.setCell((w << 6) + Long.numberOfTrailingZeros(bits), CellValue.X);
+      }
+      for (long bits = word(this.oChunks, w); bits != 0; bits &= bits - 1){
+        game.setCell((w << 6) + Long.numberOfTrailingZeros(bits), CellValue.O);
+      }
+    }
+    game.numRounds = this.numRounds;
+    game.gameState = this.gameState;
+    game.currentPlayer = this.currentPlayer;
+    //the winning move can not be undone, as for a restored snapshot.
+    if (this.gameState == GameState.XWIN || this.gameState == GameState.OWIN){
+      game.winRound = this.numRounds;
+    }
+    return game;
+  }
+
+  public int numRows() {
+    return this.layout.numRows;
+  }
+
+  public int numColumns() {
+    return this.layout.numColumns;
+  }
+
+  public int sizeToWin() {
+    return this.layout.sizeToWin;
+  }
+
+  public int numRounds() {
+    return this.numRounds;
+  }
+
+  public GameState gameState() {
+    return this.gameState;
+  }
+
+  /**
+   * The Zobrist hash of the board, the same as TicTacToe's.
+   */
+  public long hash() {
+    return this.hash;
+  }
+
+  /**
+   * Who should play next (X or O).
+   *
+   * @return The player that should play next.
+   */
+  public CellValue nextPlayer() {
+    return this.currentPlayer == CellValue.X ? CellValue.O : CellValue.X;
+  }
+
+  /**
+   * What is the value at the provided 1-based position.
+   *
+   * @param position The position on the board to look up its current value
+   * @return The CellValue at that position, INVALID if it is off the board
+   */
+  public CellValue valueAt(int position) {
+    int cell = position - 1;
+    if (cell < 0 || cell >= this.layout.numCells){
+      return CellValue.INVALID;
+    }
+    long bit = 1L << cell;
+    if ((word(this.xChunks, cell >>> 6) & bit) != 0){
+      return CellValue.X;
+    }
+    if ((word(this.oChunks, cell >>> 6) & bit) != 0){
+      return CellValue.O;
+    }
+    return CellValue.EMPTY;
+  }
+
+  /**
+   * What is the value at the provided row and column number (1-based).
+   *
+   * @param row The row of the cell
+   * @param column The column of the cell
+   * @return The CellValue at that row/column, INVALID if it is off the board
+   */
+  public CellValue valueAt(int row, int column) {
+    if (row < 1 || row > this.layout.numRows || column < 1 || column > this.layout.numColumns){
+      return CellValue.INVALID;
+    }
+    return valueAt((row - 1) * this.layout.numColumns + column);
+  }
+
+  /**
+   * The game after the next player plays the provided position.
+   * This game is not modified.
+   *
+   * @param position The position that has been selected by the next player.
+   * @return the new game
+   * @throws IllegalArgumentException with the message of TicTacToe.play()
+   *         if the position is off the board or already played
+   */
+  public ImmutableTicTacToe play(int position) {
+    CellValue value = valueAt(position);
+    if (value == CellValue.INVALID){
+      throw new IllegalArgumentException("The value should be between 1 and " + this.layout.numCells);
+    }
+    if (value != CellValue.EMPTY){
+      throw new IllegalArgumentException("Cell " + position + " has already been played with " + value);
+    }
+
+    CellValue player = nextPlayer();
+    int cell = position - 1;
+    long[][] xs = this.xChunks;
+    long[][] os = this.oChunks;
+    long hash = this.hash;
+    if (player == CellValue.X){
+      xs = withCell(xs, cell);
+      hash ^= this.layout.xKeys[cell];
+    } else {
+      os = withCell(os, cell);
+      hash ^= this.layout.oKeys[cell];
+    }
+    int rounds = this.numRounds + 1;
+
+    //the winner of the game is the player who won first.
+    GameState state = this.gameState;
+    if (state == GameState.PLAYING){
+      if (hasLineThrough(player == CellValue.X ? xs : os, cell)){
+        state = player == CellValue.X ? GameState.XWIN : GameState.OWIN;
+      } else if (rounds == this.layout.numCells){
+        state = GameState.DRAW;
+      }
+    }
+    return new ImmutableTicTacToe(this.layout, xs, os, rounds, state, player, hash);
+  }
+
+  /**
+   * The chunks of a bitboard with one more cell set: only the
+   * chunk holding the cell is copied, the others are shared.
+   */
+  private static long[][] withCell(long[][] chunks, int cell) {
+    int word = cell >>> 6;
+    long[][] copy = chunks.clone();
+    long[] chunk = chunks[word >>> CHUNK_SHIFT].clone();
+    chunk[word & (CHUNK_WORDS - 1)] |= 1L << cell;
+    copy[word >>> CHUNK_SHIFT] = chunk;
+    return copy;
+  }
+
+  private static long word(long[][] chunks, int word) {
+    return chunks[word >>> CHUNK_SHIFT][word & (CHUNK_WORDS - 1)];
+  }
+
+  /**
+   * Is one of the lines going through the cell complete in the
+   * chunked bitboard?
+   */
+  private boolean hasLineThrough(long[][] chunks, int cell) {
+    BoardLayout l = this.layout;
+    for (int i = l.cellLineStart[cell]; i < l.cellLineStart[cell + 1]; i++){
+      int line = l.cellLines[i];
+      boolean complete = true;
+      for (int j = l.lineWordStart[line]; j < l.lineWordStart[line + 1] && complete; j++){
+        long mask = l.lineMasks[j];
+        complete = (word(chunks, l.lineWords[j]) & mask) == mask;
+      }
+      if (complete){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A text based representation of the grid, the same as
+   * TicTacToe.toString().
+   *
+   * @return String representation of the game
+   */
+  public String toString() {
+    int rows = this.layout.numRows;
+    int columns = this.layout.numColumns;
+    StringBuilder b = new StringBuilder(rows * 8 * columns);
+    for (int i = 0; i < rows; i++){
+      if (i > 0){
+        b.append('\n');
+        for (int k = 0; k < columns; k++){
+          b.append(k == columns - 1 ? "---" : "----");
+        }
+        b.append('\n');
+      }
+      for (int j = 0; j < columns; j++){
+        CellValue value = valueAt(i * columns + j + 1);
+        b.append(' ').append(value == CellValue.EMPTY ? ' ' : value.name().charAt(0)).append(' ');
+        if (j < columns - 1){
+          b.append('|');
+        }
+      }
+    }
+    return b.toString();
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * The class <b>LineScanner</b> finds the complete lines of a whole
+ * board at once, where TicTacToe only checks the lines through the
+ * cell just played.  It is used to verify boards that were not
+ * played move by move, such as the games restored by Snapshot.read().
+ *
+ * A line is counted once per cell it starts from and per direction,
+ * so sizeToWin + 1 aligned marks make two lines.  Lines are found
+ * on the bitboards of the game, 64 cells per operation: shifting the
+ * bitboard of a player by the step of a direction (1 cell across, a
+ * row down, a row down and a cell across either way) and and-ing it
+ * with itself leaves the cells starting two aligned marks; doubling
+ * the shift each time, a run of sizeToWin marks takes about log2 of
+ * sizeToWin shifts of the whole board.  The cells whose lines would
+ * wrap around the edge of the board are then masked out.
+ *
+ * The scalar scan walks each row, column and diagonal of the board
+ * and counts the runs of marks, one cell at a time.  Both give the
+ * same results; the scalar scan is used instead of the bitboards
+ * when the program is started with -Dtictactoe.scalarScan=true.
+ */
+public class LineScanner {
+
+  /**
+   * Are boards scanned one cell at a time?
+   */
+  static final boolean SCALAR = Boolean.getBoolean("tictactoe.scalarScan");
+
+  /**
+   * The bitboard being shifted, reused by each thread so that
+   * scanning a board allocates nothing once it has been done.
+   */
+  private static final ThreadLocal<long[][]> scratch = ThreadLocal.withInitial(() -> new long[1][0]);
+
+  /**
+   * Does the player have a complete line anywhere on the board?
+   *
+   * @param game the game to scan
+   * @param player X or O
+   * @return true if sizeToWin marks of the player are aligned
+   */
+  public static boolean hasLine(TicTacToe game, CellValue player) {
+    return countLines(game, player) > 0;
+  }
+
+  /**
+   * The number of complete lines of a player on the board.
+   *
+   * @param game the game to scan
+   * @param player X or O
+   * @return the number of lines, counted from each cell they start from
+   */
+  public static int countLines(TicTacToe game, CellValue player) {
+    return SCALAR ? countLinesScalar(game, player) : countLinesBitboard(game, player);
+  }
+
+  /**
+   * countLines() on the bitboards of the game.
+   */
+  static int countLinesBitboard(TicTacToe game, CellValue player) {
+    BoardLayout layout = game.layout;
+    int numWords = layout.numWords;
+    int k = Math.max(layout.sizeToWin, 1);
+    long[] bits = player == CellValue.X ? game.xBits : game.oBits;
+    long[][] holder = scratch.get();
+    if (holder[0].length < numWords){
+      holder[0] = new long[numWords];
+    }
+    long[] runs = holder[0];
+    long[][] starts = layout.runStarts();
+
+    int count = 0;
+    for (int d = 0; d < BoardLayout.ROW_STEP.length; d++){
+      int step = BoardLayout.ROW_STEP[d] * layout.numColumns + BoardLayout.COLUMN_STEP[d];
+      System.arraycopy(bits, 0, runs, 0, numWords);
+      //runs holds the cells starting length aligned marks; doubling length, then the rest of the way to k.
+      int length = 1;
+      while (2 * length <= k){
+        andShifted(runs, numWords, length * step);
+        length *= 2;
+      }
+      if (length < k){
+        andShifted(runs, numWords, (k - length) * step);
+      }
+      long[] valid = starts[d];
+      for (int w = 0; w < numWords; w++){
+        count += Long.bitCount(runs[w] & valid[w]);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Ands each cell of the bitboard with the cell shift cells
+   * further, in place: cell i keeps its bit only if cell i + shift
+   * has its bit too.  The words are done in increasing order, so
+   * each reads words that have not been changed yet.
+   */
+  static void andShifted(long[] bits, int numWords, long shift) {
+    if (shift >= 64L * numWords){
+      java.util.Arrays.fill(bits, 0, numWords, 0L);
+      return;
+    }
+    int wordShift = (int) (shift >>> 6);
+    int bitShift = (int) (shift & 63);
+    for (int w = 0; w < numWords; w++){
+      int from = w + wordShift;
+      long low = from < numWords ? bits[from] : 0;
+      long shifted;
+      if (bitShift == 0){
+        shifted = low;
+      } else {
+        long high = from + 1 < numWords ? bits[from + 1] : 0;
+        shifted = (low >>> bitShift) | (high << (64 - bitShift));
+      }
+      bits[w] &= shifted;
+    }
+  }
+
+  /**
+   * countLines() one cell at a time: each row, column and diagonal
+   * is walked from its first cell, counting the marks in a row.
+   */
+  static int countLinesScalar(TicTacToe game, CellValue player) {
+    char mark = player == CellValue.X ? 'X' : 'O';
+    int rows = game.numRows;
+    int columns = game.numColumns;
+    int k = Math.max(game.sizeToWin, 1);
+    char[] board = game.board;
+    int count = 0;
+    for (int d = 0; d < BoardLayout.ROW_STEP.length; d++){
+      int rowStep = BoardLayout.ROW_STEP[d];
+      int columnStep = BoardLayout.COLUMN_STEP[d];
+      for (int row = 0; row < rows; row++){
+        for (int column = 0; column < columns; column++){
+          //a walk starts from the cells whose previous cell in the direction is off the board.
+          int previousRow = row - rowStep;
+          int previousColumn = column - columnStep;
+          if (previousRow >= 0 && previousColumn >= 0 && previousColumn < columns){
+            continue;
+          }
+          int run = 0;
+          for (int r = row, c = column; r < rows && c >= 0 && c < columns; r += rowStep, c += columnStep){
+            if (board[r * columns + c] == mark){
+              run += 1;
+              if (run >= k){
+                count += 1;
+              }
+            } else {
+              run = 0;
+            }
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Checks that the state of a game agrees with its board: the
+   * number of marks of each player, the player who played last,
+   * and the winner, who must have a complete line (the other player
+   * may have one too, since the game goes on after a win).  A game
+   * still being played, or drawn, has no complete line.
+   *
+   * @param game the game to check
+   * @return why the game is not consistent, or null if it is
+   */
+  public static String validate(TicTacToe game) {
+    int xs = 0;
+    int os = 0;
+    for (int w = 0; w < game.layout.numWords; w++){
+      xs += Long.bitCount(game.xBits[w]);
+      os += Long.bitCount(game.oBits[w]);
+    }
+    if (xs + os != game.numRounds){
+      return xs + os + " marks on the board after " + game.numRounds + " rounds";
+    }
+    if (xs != os && xs != os + 1){
+      return xs + " Xs and " + os + " Os on the board";
+    }
+    CellValue last = game.numRounds == 0 ? CellValue.EMPTY : xs > os ? CellValue.X : CellValue.O;
+    if (game.currentPlayer != last){
+      return "The last player should be " + last + ", not " + game.currentPlayer;
+    }
+    boolean xLine = hasLine(game, CellValue.X);
+    boolean oLine = hasLine(game, CellValue.O);
+    if (game.gameState == GameState.XWIN){
+      return xLine ? null : "XWIN without a line of X";
+    }
+    if (game.gameState == GameState.OWIN){
+      return oLine ? null : "OWIN without a line of O";
+    }
+    if (game.gameState == GameState.DRAW && game.numRounds != game.numCells){
+      return "DRAW on a board that is not full";
+    }
+    if (game.gameState == GameState.PLAYING && game.numRounds == game.numCells){
+      return "PLAYING on a full board";
+    }
+    //a game being played on a board that is not full, or a draw.
+    if (xLine || oLine){
+      return game.gameState + " with a complete line of " + (xLine ? "X" : "O");
+    }
+    return null;
+  }
+}
@@ -0,0 +1,172 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>LoadGenerator</b> measures the latency of the moves
+ * played on a GameServer with many games going on at once.
+ *
+ * Each connection creates its share of the games, then plays random
+ * legal moves in them one after the other, waiting for each response,
+ * and restarts the games that are over.  The time between sending a
+ * move and reading its response is recorded, and the percentiles of
+ * all the moves are printed at the end.
+ *
+ * Usage: java LoadGenerator [port] [games] [connections] [seconds] [size] [win]
+ * (defaults: 7777, 10000 games, 100 connections, 10 seconds, 10x10 boards, 5 to win)
+ * A connection keeps at most GameServer.MAX_GAMES_PER_CONNECTION games.
+ */
+public class LoadGenerator {
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+    int connections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+    long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+    int size = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+    int win = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+
+    long deadline = System.nanoTime() + seconds * 1000000000L;
+    List<Client> clients = new ArrayList<Client>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int c = 0; c < connections; c++){
+      int share = games / connections + (c < games % connections ? 1 : 0);
+      Client client = new Client(port, share, size, win, deadline);
+      clients.add(client);
+      Thread thread = new Thread(client, "client-" + c);
+      threads.add(thread);
+      thread.start();
+    }
+
+    long total = 0;
+    for (int c = 0; c < connections; c++){
+      threads.get(c).join();
+      if (clients.get(c).error != null){
+        throw clients.get(c).error;
+      }
+      total += clients.get(c).numLatencies;
+    }
+    long[] latencies = new long[(int) total];
+    int at = 0;
+    for (Client client : clients){
+      System.arraycopy(client.latencies, 0, latencies, at, client.numLatencies);
+      at += client.numLatencies;
+    }
+    Arrays.sort(latencies);
+
+    System.out.printf("%d games on %d connections: %d moves in %d s (%.0f moves/s)%n",
+      games, connections, total, seconds, total / (double) seconds);
+    if (total > 0){
+      System.out.printf("latency (us): p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+        percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+        percentile(latencies, 0.999), latencies[latencies.length - 1] / 1000.0);
+    }
+  }
+
+  /**
+   * The latency below which the provided fraction of
+   * the sorted latencies are, in microseconds.
+   */
+  static double percentile(long[] sorted, double fraction) {
+    int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+    return sorted[Math.max(index, 0)] / 1000.0;
+  }
+
+  /**
+   * One connection and the games it plays.
+   */
+  private static final class Client implements Runnable {
+    private final int port;
+    private final int numGames;
+    private final int numCells;
+    private final String create;
+    private final long deadline;
+    private final SplittableRandom random = new SplittableRandom();
+
+    long[] latencies = new long[1 << 16];
+    int numLatencies;
+    Exception error;
+
+    Client(int port, int numGames, int size, int win, long deadline) {
+      this.port = port;
+      this.numGames = numGames;
+      this.numCells = size * size;
+      this.create = "create " + size + " " + size + " " + win + "\n";
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+      try (Socket socket = new Socket("localhost", this.port)) {
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+        //the empty cells of each game, the first free[g][0] of them still to play.
+        long[] ids = new long[this.numGames];
+        int[][] free = new int[this.numGames][];
+        for (int g = 0; g < this.numGames; g++){
+          ids[g] = Long.parseLong(request(out, in, this.create).substring(3));
+          free[g] = newFreeCells();
+        }
+
+        int g = 0;
+        while (this.numGames > 0 && System.nanoTime() < this.deadline){
+          int[] cells = free[g];
+          int pick = 1 + this.random.nextInt(cells[0]);
+          int position = cells[pick];
+          cells[pick] = cells[cells[0]];
+          cells[0] -= 1;
+
+          long start = System.nanoTime();
+          String response = request(out, in, "play " + ids[g] + " " + position + "\n");
+          record(System.nanoTime() - start);
+          if (!response.startsWith("OK")){
+            throw new IOException("Unexpected response " + response);
+          }
+          if (!"OK PLAYING".equals(response)){
+            request(out, in, "restart " + ids[g] + "\n");
+            free[g] = newFreeCells();
+          }
+          g = (g + 1) % this.numGames;
+        }
+      } catch (Exception e) {
+        this.error = e;
+      }
+    }
+
+    private int[] newFreeCells() {
+      int[] cells = new int[this.numCells + 1];
+      cells[0] = this.numCells;
+      for (int i = 1; i <= this.numCells; i++){
+        cells[i] = i;
+      }
+      return cells;
+    }
+
+    private static String request(OutputStream out, BufferedReader in, String request) throws IOException {
+      out.write(request.getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      String response = in.readLine();
+      if (response == null){
+        throw new IOException("The server closed the connection");
+      }
+      return response;
+    }
+
+    private void record(long nanos) {
+      if (this.numLatencies == this.latencies.length){
+        this.latencies = Arrays.copyOf(this.latencies, 2 * this.latencies.length);
+      }
+      this.latencies[this.numLatencies] = nanos;
+      this.numLatencies += 1;
+    }
+  }
+}
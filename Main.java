@@ -10,27 +10,89 @@ public class Main {
    * used if the paramters are too small (less than 2).
    * Here, we assume that the command lines arguments are indeed integers
    *
+   * A fourth parameter (X, O or XO) lets the computer play
+   * for X, for O, or for both players.  It plays perfectly from the
+   * tablebase of the game when its file has been built (see
+   * Tablebase), and searches its moves otherwise.
+   *
+   * With --batch [file] [--show] as parameters, games are
+   * read from the file (or the standard input) and only their
+   * results are printed, see Batch.
+   *
+   * With --server [port] [reactors] as parameters, many games
+   * are hosted and played over TCP, see GameServer.
+   *
    * @param args command lines parameters
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws java.io.IOException {
+
+    if (args.length > 0 && "--batch".equals(args[0])) {
+      Batch.run(args);
+      return;
+    }
+    if (args.length > 0 && "--server".equals(args[0])) {
+      GameServer.run(args);
+      return;
+    }
 
     int lines = validateInt(args, 0);
     int columns = validateInt(args, 1);
     int wins = validateInt(args, 2);
-
+    String computer = "";
     if (args.length > 3){
-        System.out.println("Too many arguments. Only the first 3 are used.");
+      computer = args[3].toUpperCase();
+    }
+
+    if (args.length > 4){
+        System.out.println("Too many arguments. Only the first 4 are used.");
     }
 
     TicTacToe game = new TicTacToe(lines, columns, wins);
 
+    //the computer players are only set up when the computer plays.
+    AlphaBetaSearch engine = null;
+    Tablebase tablebase = null;
+    if (!computer.isEmpty()) {
+      tablebase = Tablebase.open(lines, columns, wins);
+      if (tablebase == null) {
+        engine = new AlphaBetaSearch();
+      }
+    }
+
     while (true) {
       printToScreen(game.show());
-      String input = System.console().readLine();
+
+      //the computer plays its moves as long as nobody has won.
+      if (game.gameState == GameState.PLAYING && computerPlays(computer, game)) {
+        int position = tablebase != null ? tablebase.bestMove(game) : engine.bestMove(game);
+        printToScreen(game.nextPlayer() + " plays " + position);
+        printToScreen(game.play(position));
+        continue;
+      }
+
+      String input = readLine();
+      if (input == null) {
+        break;
+      }
 
       if ("restart".equals(input)) {
         printToScreen("Restarting game.");
-        game = new TicTacToe(lines, columns, wins);
+        game.reset();
+        continue;
+      } else if ("undo".equals(input)) {
+        //the computer would play again the move it just played, so it is taken back with the move before it.
+        if (!game.undo()) {
+          printToScreen("Nothing to undo.");
+        } else if (computerPlays(computer, game)) {
+          game.undo();
+        }
+        continue;
+      } else if ("redo".equals(input)) {
+        if (!game.redo()) {
+          printToScreen("Nothing to redo.");
+        } else if (computerPlays(computer, game)) {
+          game.redo();
+        }
         continue;
       } else if ("debug".equals(input)) {
         printToScreen(game.toDebug());
@@ -45,6 +107,37 @@ public class Main {
     }
   }
 
+  /**
+   * Does the computer play the next move of the game?
+   *
+   * @param computer the players of the computer: "", "X", "O" or "XO"
+   * @param game the game being played
+   */
+  private static boolean computerPlays(String computer, TicTacToe game) {
+    return computer.indexOf(game.nextPlayer().toString()) >= 0;
+  }
+
+  /**
+   * Reads the next line typed by the user, from the console
+   * if there is one, otherwise from the standard input.
+   *
+   * @return the line, or null at the end of the input
+   */
+  private static String readLine() throws java.io.IOException {
+    if (System.console() != null) {
+      return System.console().readLine();
+    }
+    if (stdin == null) {
+      stdin = new java.io.BufferedReader(new java.io.InputStreamReader(System.in));
+    }
+    return stdin.readLine();
+  }
+
+  /**
+   * The standard input, when there is no console.
+   */
+  private static java.io.BufferedReader stdin;
+
   /**
    * Print all the messages to the console
    */
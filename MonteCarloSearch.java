@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class <b>MonteCarloSearch</b> is a computer player for
+ * boards that are too big to be searched with AlphaBetaSearch.
+ *
+ * It grows a single search tree (UCT) shared by several threads.
+ * Each iteration walks down the tree to a leaf, then plays random
+ * moves until the game is over and counts the result for every
+ * node on the way.  While a thread is going through a node, it
+ * adds a "virtual loss" to it, so that the other threads are
+ * steered towards other moves in the meantime.
+ *
+ * Each thread plays on its own copy of the position to search.
+ * An iteration plays its moves with TicTacToe.playFast(), which
+ * leaves out the hashes and threat indexes a playout does not need,
+ * picks its random moves from the free cells the game keeps, in
+ * constant time, and takes its moves back afterwards, so that the
+ * game is back to the position to search without being copied.
+ *
+ * The search is anytime: it returns the most visited move when
+ * either its time budget or its number of iterations runs out.
+ */
+public class MonteCarloSearch implements Player {
+
+  /**
+   * How much the search favours the moves it has tried
+   * the least over the moves that scored the best.
+   */
+  static final double EXPLORATION = 1.4;
+
+  /**
+   * The number of losses added to a node while a thread
+   * is going through it.
+   */
+  static final int VIRTUAL_LOSS = 3;
+
+  /**
+   * The threads doing the playouts.
+   */
+  private final ExecutorService threads;
+  private final int numThreads;
+
+  /**
+   * The limits of each search.
+   */
+  private final long timeBudget;
+  private final long maxIterations;
+
+  /**
+   * The number of iterations of the last search.
+   */
+  private long lastIterations;
+
+  /**
+   * The default computer player: every available
+   * processor and one second per move.
+   */
+  public MonteCarloSearch() {
+    this(Runtime.getRuntime().availableProcessors(), 1000, Long.MAX_VALUE);
+  }
+
+  /**
+   * A computer player searching with the provided number
+   * of threads until either limit is reached.
+   *
+   * @param numThreads the number of threads doing playouts
+   * @param timeBudgetMillis the time allowed for each move, in milliseconds
+   * @param maxIterations the number of playouts allowed for each move
+   */
+  public MonteCarloSearch(int numThreads, long timeBudgetMillis, long maxIterations) {
+    this.numThreads = numThreads;
+    this.timeBudget = timeBudgetMillis * 1000000L;
+    this.maxIterations = maxIterations;
+    this.threads = Executors.newFixedThreadPool(numThreads, runnable -> {
+      Thread thread = new Thread(runnable, "mcts");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Which position should the next player play?
+   *
+   * The provided game is not modified.  If the game is over,
+   * the first empty position is returned, since there is
+   * nothing left to search for.
+   *
+   * @param current the game to play in
+   * @return the 1-based position to play, or 0 if the board is full
+   */
+  public int bestMove(TicTacToe current) {
+    int numCells = current.numCells;
+    int numEmpty = current.numFreeCells();
+    if (numEmpty == 0){
+      return 0;
+    }
+    int fallback = 0;
+    for (int i = 1; i <= numCells && fallback == 0; i++){
+      if (current.valueAt(i) == CellValue.EMPTY){
+        fallback = i;
+      }
+    }
+    if (current.gameState != GameState.PLAYING || numEmpty == 1){
+      return fallback;
+    }
+
+    TicTacToe start = new TicTacToe(current);
+    Node root = new Node(0);
+    AtomicLong iterations = new AtomicLong();
+    long deadline = System.nanoTime() + this.timeBudget;
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int t = 0; t < this.numThreads; t++){
+      Playouts playouts = new Playouts(start, root, iterations, this.maxIterations, deadline);
+      tasks.add(() -> {
+        playouts.run();
+        return null;
+      });
+    }
+    try {
+      this.threads.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    //each thread counts one iteration too many when it stops on the limit.
+    this.lastIterations = Math.min(iterations.get(), this.maxIterations);
+
+    //The most visited move is the one the search trusts the most.
+    Node[] children = root.children;
+    int best = fallback;
+    int bestVisits = -1;
+    if (children != null){
+      for (Node child : children){
+        if (child.visits > bestVisits){
+          bestVisits = child.visits;
+          best = child.move;
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Which position should the next player play, in a view of a
+   * game?  See bestMove(TicTacToe).
+   */
+  @Override
+  public int bestMove(GameView game) {
+    return bestMove(Player.searchable(game));
+  }
+
+  /**
+   * How many playouts the last search ran.
+   *
+   * @return the number of iterations of the last search
+   */
+  public long lastIterations() {
+    return this.lastIterations;
+  }
+
+  /**
+   * Stops the threads.  The player can not be used afterwards.
+   */
+  public void shutdown() {
+    this.threads.shutdown();
+  }
+
+  /**
+   * A node of the tree: the move that leads to it, how often it
+   * was visited, and its score counted in half points (2 for a win
+   * of the player who played the move, 1 for a draw) so that it
+   * can be updated atomically.
+   */
+  static final class Node {
+    static final AtomicIntegerFieldUpdater<Node> VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+    static final AtomicIntegerFieldUpdater<Node> SCORE = AtomicIntegerFieldUpdater.newUpdater(Node.class, "score");
+
+    final int move;
+    volatile Node[] children;
+    volatile int visits;
+    volatile int score;
+
+    Node(int move) {
+      this.move = move;
+    }
+
+    /**
+     * Creates the children of the node, one per empty cell,
+     * unless another thread already did.
+     */
+    synchronized void expand(TicTacToe game) {
+      if (this.children != null){
+        return;
+      }
+      Node[] nodes = new Node[game.numFreeCells()];
+      for (int i = 0; i < nodes.length; i++){
+        nodes[i] = new Node(game.freePosition(i));
+      }
+      this.children = nodes;
+    }
+  }
+
+  /**
+   * The iterations run by one thread, on its own game.
+   */
+  private static final class Playouts {
+    private final TicTacToe start;
+    private final Node root;
+    private final AtomicLong iterations;
+    private final long maxIterations;
+    private final long deadline;
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * The game being played.
+     */
+    private final TicTacToe game;
+
+    /**
+     * The nodes visited by the current iteration, and the
+     * 0-based cells it played, to be taken back.
+     */
+    private final Node[] path;
+    private final int[] played;
+
+    Playouts(TicTacToe start, Node root, AtomicLong iterations, long maxIterations, long deadline) {
+      this.start = start;
+      this.root = root;
+      this.iterations = iterations;
+      this.maxIterations = maxIterations;
+      this.deadline = deadline;
+      this.game = new TicTacToe(start);
+      this.path = new Node[start.numFreeCells() + 1];
+      this.played = new int[start.numFreeCells()];
+    }
+
+    void run() {
+      while (System.nanoTime() < this.deadline && this.iterations.getAndIncrement() < this.maxIterations){
+        iterate();
+      }
+    }
+
+    /**
+     * One iteration: select a leaf, play randomly to the end
+     * of the game, and count the result along the path.
+     */
+    private void iterate() {
+      TicTacToe g = this.game;
+      int numPlayed = 0;
+
+      //Selection: walk down the tree, adding a virtual loss to each node.
+      Node node = this.root;
+      int depth = 0;
+      this.path[0] = node;
+      while (g.gameState == GameState.PLAYING){
+        Node[] children = node.children;
+        if (children == null){
+          //a leaf is only expanded once it has been through a playout, on top of our own virtual loss.
+          if (node.visits <= VIRTUAL_LOSS && node != this.root){
+            break;
+          }
+          node.expand(g);
+          children = node.children;
+        }
+        node = select(node, children);
+        Node.VISITS.addAndGet(node, VIRTUAL_LOSS);
+        g.playFast(node.move - 1);
+        this.played[numPlayed++] = node.move - 1;
+        depth += 1;
+        this.path[depth] = node;
+      }
+
+      //Playout: random moves until the game is over.
+      while (g.gameState == GameState.PLAYING){
+        int cell = g.freeCells[this.random.nextInt(g.numFree)];
+        g.playFast(cell);
+        this.played[numPlayed++] = cell;
+      }
+
+      //Backpropagation: the node reached by an odd number of moves was played by the player to move at the root.
+      CellValue first = this.start.nextPlayer();
+      GameState firstWins = first == CellValue.X ? GameState.XWIN : GameState.OWIN;
+      int firstScore = 1;
+      if (g.gameState == firstWins){
+        firstScore = 2;
+      } else if (g.gameState != GameState.DRAW){
+        firstScore = 0;
+      }
+      while (numPlayed > 0){
+        numPlayed -= 1;
+        g.unplayFast(this.played[numPlayed]);
+      }
+      for (int d = depth; d >= 1; d--){
+        Node visited = this.path[d];
+        Node.VISITS.addAndGet(visited, 1 - VIRTUAL_LOSS);
+        Node.SCORE.addAndGet(visited, (d & 1) == 1 ? firstScore : 2 - firstScore);
+      }
+      Node.VISITS.incrementAndGet(this.root);
+    }
+
+    /**
+     * The child with the best upper confidence bound.
+     * Children that were never visited come first.
+     */
+    private Node select(Node parent, Node[] children) {
+      double logVisits = Math.log(Math.max(parent.visits, 1));
+      Node best = children[0];
+      double bestValue = Double.NEGATIVE_INFINITY;
+      for (Node child : children){
+        int visits = child.visits;
+        if (visits == 0){
+          return child;
+        }
+        double value = child.score / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+        if (value > bestValue){
+          bestValue = value;
+          best = child;
+        }
+      }
+      return best;
+    }
+  }
+}
@@ -0,0 +1,463 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class <b>MoveJournal</b> keeps TicTacToe games alive across
+ * restarts of the program hosting them.
+ *
+ * Every accepted move is appended to a journal file mapped in
+ * memory, as a fixed-width record of 16 bytes:
+ *
+ *  game id (8 bytes), position (4 bytes), generation (1 byte),
+ *  round (3 bytes).
+ *
+ * Rounds of moves start at 1.  A record with round 0 creates a game,
+ * its position holding the dimensions (rows and columns on 12 bits
+ * each, sizeToWin on 8 bits).  A record with round END ends a game.
+ * A record of zeros marks the end of the journal.
+ *
+ * Records are written to the mapped file right away; a background
+ * thread forces them to disk every few milliseconds, so that one
+ * fsync covers all the moves appended in the meantime (group commit).
+ * Callers that need a move to be durable wait with awaitDurable().
+ *
+ * The journal is compacted when it is full, and by the background
+ * thread once in a while (every minute by default) so that a restart
+ * does not replay a long journal: every live game is saved as a
+ * Snapshot, then the journal starts over.  On startup the
+ * snapshots are loaded and the journal replayed on top of them.
+ *
+ * Each compaction starts a new generation, saved at the start of the
+ * snapshots file and in every record appended until the next one.  A
+ * record of another generation was left over by a compaction cut
+ * short by a crash: it is already in the snapshots.  Such a record,
+ * a record that does not follow its game, or creates a game of invalid
+ * dimensions (torn by a crash) ends the journal, and everything from
+ * there to the end of the file is erased, past any record of zeros,
+ * so that it can not be replayed after the records appended later.
+ * Replay also skips moves whose round was already played.
+ */
+public class MoveJournal implements Closeable {
+
+  /**
+   * The size of a record.
+   */
+  static final int RECORD_SIZE = 16;
+
+  /**
+   * The round of the records creating and ending a game.
+   */
+  static final int CREATE = 0;
+  static final int END = 0xFFFFFF;
+
+  /**
+   * The bits of the round, in the last int of a record; the
+   * generation of the journal is in the upper 8 bits.  The rounds
+   * of a 4095x4095 game fit below END.
+   */
+  static final int ROUND_BITS = 24;
+  static final int ROUND_MASK = (1 << ROUND_BITS) - 1;
+
+  /**
+   * How often the background thread compacts the journal, by default.
+   */
+  static final long COMPACT_MILLIS = 60_000;
+
+  /**
+   * The live games, by id.
+   */
+  private final Map<Long, TicTacToe> games = new HashMap<Long, TicTacToe>();
+
+  /**
+   * The files holding the journal and the compacted games.
+   */
+  private final Path snapshotFile;
+  private final FileChannel channel;
+  private final MappedByteBuffer journal;
+
+  /**
+   * The generation of the records appended, from 1 to 255:
+   * never 0, so that a record of zeros is never current.
+   */
+  private int generation = 1;
+
+  /**
+   * How many records were appended, and how many of
+   * those are known to be on disk.
+   */
+  private long appended;
+  private long durable;
+
+  /**
+   * The thread forcing the journal to disk.
+   */
+  private final Thread flusher;
+  private final long commitMillis;
+  private final long compactNanos;
+  private long lastCompaction;
+  private volatile boolean closed;
+
+  /**
+   * Opens (or creates) the journal of a directory with room for
+   * one million records between compactions, forced to disk
+   * every 2 milliseconds.
+   *
+   * @param directory where the journal and snapshots are kept
+   */
+  public MoveJournal(Path directory) throws IOException {
+    this(directory, 1 << 20, 2);
+  }
+
+  /**
+   * Opens (or creates) the journal of a directory, compacted
+   * every minute, and restores the games it holds.
+   *
+   * @param directory where the journal and snapshots are kept
+   * @param capacity the number of records between compactions
+   * @param commitMillis how often the journal is forced to disk
+   */
+  public MoveJournal(Path directory, int capacity, long commitMillis) throws IOException {
+    this(directory, capacity, commitMillis, COMPACT_MILLIS);
+  }
+
+  /**
+   * Opens (or creates) the journal of a directory, and
+   * restores the games it holds.
+   *
+   * @param directory where the journal and snapshots are kept
+   * @param capacity the most records between compactions
+   * @param commitMillis how often the journal is forced to disk
+   * @param compactMillis how often the journal is compacted, or 0 only when it is full
+   */
+  public MoveJournal(Path directory, int capacity, long commitMillis, long compactMillis) throws IOException {
+    Files.createDirectories(directory);
+    this.snapshotFile = directory.resolve("games.snapshots");
+    this.channel = FileChannel.open(directory.resolve("games.journal"), StandardOpenOption.CREATE,
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.journal = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+    this.commitMillis = commitMillis;
+    this.compactNanos = compactMillis * 1_000_000;
+    this.lastCompaction = System.nanoTime();
+
+    loadSnapshots();
+    replay();
+
+    this.flusher = new Thread(this::flushLoop, "journal-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * The games restored at startup and created since.
+   * The map must not be modified.
+   *
+   * @return the live games by id
+   */
+  public synchronized Map<Long, TicTacToe> games() {
+    return Collections.unmodifiableMap(this.games);
+  }
+
+  /**
+   * The game with the provided id.
+   *
+   * @param gameId the id of the game
+   * @return the game, or null if there is no such game
+   */
+  public synchronized TicTacToe game(long gameId) {
+    return this.games.get(gameId);
+  }
+
+  /**
+   * Creates a new game and records it in the journal.
+   *
+   * @param gameId the id of the game, not used by a live game
+   * @param numRows the number of lines in the game, at most 4095
+   * @param numColumns the number of columns in the game, at most 4095
+   * @param sizeToWin the number of cells that must be aligned to win, at most 255
+   * @return the new game
+   */
+  public synchronized TicTacToe create(long gameId, int numRows, int numColumns, int sizeToWin) throws IOException {
+    if (numRows < 1 || numRows > 4095 || numColumns < 1 || numColumns > 4095 || sizeToWin < 1 || sizeToWin > 255){
+      throw new IllegalArgumentException("A journaled game must be at most 4095x4095 with at most 255 to win");
+    }
+    if (this.games.containsKey(gameId)){
+      throw new IllegalArgumentException("Game " + gameId + " already exists");
+    }
+    TicTacToe game = new TicTacToe(numRows, numColumns, sizeToWin);
+    this.games.put(gameId, game);
+    append(gameId, (numRows << 20) | (numColumns << 8) | sizeToWin, CREATE);
+    return game;
+  }
+
+  /**
+   * Plays a move in a game, and records it in the journal if it
+   * was accepted.
+   *
+   * @param gameId the id of the game
+   * @param position the position played by the next player
+   * @return the outcome of TicTacToe.tryPlay()
+   */
+  public synchronized PlayResult play(long gameId, int position) throws IOException {
+    TicTacToe game = this.games.get(gameId);
+    if (game == null){
+      throw new IllegalArgumentException("Unknown game " + gameId);
+    }
+    PlayResult result = game.tryPlay(position);
+    if (result.isAccepted()){
+      append(gameId, position, game.numRounds);
+    }
+    return result;
+  }
+
+  /**
+   * Ends a game: it is removed from the live games and
+   * will not be restored anymore.
+   *
+   * @param gameId the id of the game
+   */
+  public synchronized void end(long gameId) throws IOException {
+    if (this.games.remove(gameId) != null){
+      append(gameId, 0, END);
+    }
+  }
+
+  /**
+   * Waits until everything appended so far is on disk.
+   */
+  public void awaitDurable() throws InterruptedException {
+    synchronized (this) {
+      long target = this.appended;
+      while (this.durable < target && !this.closed){
+        this.notifyAll();
+        this.wait();
+      }
+    }
+  }
+
+  /**
+   * Saves every live game as a snapshot and starts the journal over.
+   */
+  public synchronized void compact() throws IOException {
+    this.journal.force();
+    int next = this.generation % 255 + 1;
+
+    //the snapshots are written aside and moved in place once complete.
+    Path temporary = this.snapshotFile.resolveSibling(this.snapshotFile.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+      buffer.putInt(next);
+      for (Map.Entry<Long, TicTacToe> entry : this.games.entrySet()){
+        TicTacToe game = entry.getValue();
+        int size = 8 + Snapshot.size(game.numRows, game.numColumns);
+        if (buffer.remaining() < size){
+          writeAll(out, buffer);
+          if (buffer.capacity() < size){
+            buffer = ByteBuffer.allocateDirect(size);
+          }
+        }
+        buffer.putLong(entry.getKey());
+        Snapshot.write(game, buffer);
+      }
+      writeAll(out, buffer);
+      out.force(true);
+    }
+    Files.move(temporary, this.snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    //from here, the records left in the journal are of an older generation and not replayed.
+    this.generation = next;
+
+    //the records are now in the snapshots: erase them so that they are not replayed.
+    int used = this.journal.position();
+    byte[] zeros = new byte[Math.min(used, 1 << 16)];
+    this.journal.position(0);
+    while (this.journal.position() < used){
+      this.journal.put(zeros, 0, Math.min(zeros.length, used - this.journal.position()));
+    }
+    this.journal.force();
+    this.journal.position(0);
+    this.lastCompaction = System.nanoTime();
+  }
+
+  /**
+   * Forces what is left to disk and stops the background thread.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      this.journal.force();
+      this.durable = this.appended;
+      this.closed = true;
+      this.notifyAll();
+    }
+    this.flusher.interrupt();
+    this.channel.close();
+  }
+
+  /**
+   * Appends a record, compacting the journal first if it is full.
+   */
+  private void append(long gameId, int position, int round) throws IOException {
+    if (this.journal.remaining() < RECORD_SIZE){
+      compact();
+    }
+    this.journal.putLong(gameId);
+    this.journal.putInt(position);
+    this.journal.putInt(stamp(round, this.generation));
+    this.appended += 1;
+  }
+
+  /**
+   * Forces the journal to disk every commitMillis milliseconds,
+   * or sooner when someone waits for it, and compacts it every
+   * compactMillis milliseconds.
+   */
+  private void flushLoop() {
+    try {
+      while (!this.closed){
+        long target;
+        boolean pending;
+        synchronized (this) {
+          if (this.durable == this.appended){
+            this.wait(this.commitMillis);
+          }
+          target = this.appended;
+          pending = target > this.durable;
+        }
+        if (pending){
+          this.journal.force();
+          synchronized (this) {
+            this.durable = Math.max(this.durable, target);
+            this.notifyAll();
+          }
+        }
+        compactIfDue();
+      }
+    } catch (InterruptedException e) {
+      //closing
+    }
+  }
+
+  /**
+   * Compacts the journal if it holds records and was
+   * last compacted more than compactMillis ago.
+   */
+  private synchronized void compactIfDue() {
+    if (this.closed || this.compactNanos <= 0 || this.journal.position() == 0
+        || System.nanoTime() - this.lastCompaction < this.compactNanos){
+      return;
+    }
+    try {
+      compact();
+    } catch (IOException e) {
+      //the journal still holds every record: it is tried again next time.
+      this.lastCompaction = System.nanoTime();
+      System.err.println("Could not compact the journal: " + e);
+    }
+  }
+
+  /**
+   * Loads the games saved by the last compaction.
+   */
+  private void loadSnapshots() throws IOException {
+    if (!Files.exists(this.snapshotFile)){
+      return;
+    }
+    try (FileChannel in = FileChannel.open(this.snapshotFile, StandardOpenOption.READ)) {
+      ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+      this.generation = buffer.getInt();
+      while (buffer.remaining() >= 8 + Snapshot.HEADER_SIZE){
+        long gameId = buffer.getLong();
+        this.games.put(gameId, Snapshot.read(buffer));
+      }
+    }
+  }
+
+  /**
+   * Replays the journal on top of the snapshots, and leaves
+   * the journal positioned after its last valid record.
+   */
+  private void replay() {
+    ByteBuffer records = this.journal;
+    records.position(0);
+    while (records.remaining() >= RECORD_SIZE){
+      int start = records.position();
+      long gameId = records.getLong();
+      int position = records.getInt();
+      int stamped = records.getInt();
+      int round = stamped & ROUND_MASK;
+      if (stamped >>> ROUND_BITS != this.generation){
+        //the end of the journal, or what a compaction cut short left of the previous generation.
+        eraseFrom(start);
+        return;
+      }
+      TicTacToe game = this.games.get(gameId);
+      if (round == CREATE){
+        int numRows = position >>> 20;
+        int numColumns = (position >>> 8) & 0xFFF;
+        int sizeToWin = position & 0xFF;
+        if (numRows == 0 || numColumns == 0 || sizeToWin == 0){
+          eraseFrom(start);
+          return;
+        }
+        if (game == null){
+          this.games.put(gameId, new TicTacToe(numRows, numColumns, sizeToWin));
+        }
+      } else if (round == END){
+        this.games.remove(gameId);
+      } else if (game != null && round == game.numRounds + 1){
+        game.tryPlay(position);
+      } else if (game == null || round > game.numRounds){
+        //a record that does not follow its game was torn by a crash: the journal ends before it.
+        eraseFrom(start);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Erases the records from the provided offset up to the end of
+   * the journal, past the records of zeros between them, so that
+   * none is replayed after the records appended from there, and
+   * leaves the journal positioned at the offset.
+   */
+  private void eraseFrom(int start) {
+    ByteBuffer records = this.journal;
+    for (int at = start; at <= records.limit() - RECORD_SIZE; at += RECORD_SIZE){
+      if (records.getLong(at) != 0 || records.getLong(at + 8) != 0){
+        records.putLong(at, 0);
+        records.putLong(at + 8, 0);
+      }
+    }
+    records.position(start);
+  }
+
+  /**
+   * The last int of a record: the round, with the generation
+   * of the journal in its upper bits.
+   *
+   * @param round the round of the record, CREATE or END
+   * @param generation the generation of the journal
+   * @return the stamped round
+   */
+  static int stamp(int round, int generation) {
+    return generation << ROUND_BITS | round & ROUND_MASK;
+  }
+
+  private static void writeAll(FileChannel out, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()){
+      out.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,688 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class <b>ParallelSearch</b> is a computer player that
+ * searches the game tree on all the threads of a ForkJoinPool.
+ *
+ * It runs the same negamax search as AlphaBetaSearch, split
+ * with the Young Brothers Wait scheme: at a node close enough
+ * to the root, the first (eldest) move is searched alone, and
+ * only once its score is known are the other moves searched in
+ * parallel.  Each parallel move is searched on its own copy of
+ * the game, so no board is ever shared between threads.  The copies,
+ * the move lists and the tasks are kept by each thread and reused,
+ * so that a search allocates almost nothing once it has warmed up.
+ *
+ * All the threads share a lock-free transposition table, keyed
+ * by the canonical hash of the positions as in AlphaBetaSearch: each
+ * slot is a pair of longs in an AtomicLongArray holding the key
+ * XORed with the entry, and the entry.  A slot being written
+ * by another thread fails the XOR check and is simply ignored.
+ */
+public class ParallelSearch implements Player {
+
+  /**
+   * Nodes with fewer moves than this left to search are searched
+   * on a single thread, since splitting them costs more than it saves.
+   */
+  static final int DEFAULT_SPLIT_DEPTH = 4;
+
+  /**
+   * The threads doing the search.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * The table shared by all the threads.
+   */
+  private final SharedTable table;
+
+  /**
+   * The smallest depth at which a node is split.
+   */
+  private final int splitDepth;
+
+  /**
+   * The time allowed for each move, in nanoseconds.
+   */
+  private final long timeBudget;
+
+  /**
+   * The state of the search in progress, read by all the threads.
+   */
+  private volatile long deadline;
+  private volatile boolean stopped;
+  private volatile int rootMove;
+  private int generation;
+  private int bestScore;
+  private long elapsed;
+
+  /**
+   * The copy of the game the search starts from, reused from move to move.
+   */
+  private TicTacToe rootGame;
+
+  /**
+   * The per thread search state: each thread registers
+   * its worker the first time it searches.
+   */
+  private final ThreadLocal<Worker> workers;
+  private final ConcurrentLinkedQueue<Worker> allWorkers;
+
+  /**
+   * A parallel computer player using every available processor,
+   * a table of 2^22 slots and one second per move.
+   */
+  public ParallelSearch() {
+    this(Runtime.getRuntime().availableProcessors(), 22, 1000);
+  }
+
+  /**
+   * A parallel computer player.
+   *
+   * @param threads the number of threads searching
+   * @param tableBits the log2 of the number of slots in the shared table
+   * @param timeBudgetMillis the time allowed for each move, in milliseconds
+   */
+  public ParallelSearch(int threads, int tableBits, long timeBudgetMillis) {
+    this.pool = new ForkJoinPool(threads);
+    this.table = new SharedTable(tableBits);
+    this.splitDepth = DEFAULT_SPLIT_DEPTH;
+    this.timeBudget = timeBudgetMillis * 1000000L;
+    this.allWorkers = new ConcurrentLinkedQueue<Worker>();
+    this.workers = ThreadLocal.withInitial(() -> {
+      Worker worker = new Worker(Thread.currentThread().getName());
+      this.allWorkers.add(worker);
+      return worker;
+    });
+  }
+
+  /**
+   * Which position should the next player play?
+   *
+   * The provided game is not modified.  If the game is over,
+   * the first empty position is returned, since there is
+   * nothing left to search for.
+   *
+   * @param current the game to play in
+   * @return the 1-based position to play, or 0 if the board is full
+   */
+  public int bestMove(TicTacToe current) {
+    int numCells = current.numCells;
+    if (current.numRounds == numCells){
+      return 0;
+    }
+    int fallback = 0;
+    for (int i = 1; i <= numCells && fallback == 0; i++){
+      if (current.valueAt(i) == CellValue.EMPTY){
+        fallback = i;
+      }
+    }
+    if (current.gameState != GameState.PLAYING){
+      return fallback;
+    }
+
+    long start = System.nanoTime();
+    this.deadline = start + this.timeBudget;
+    this.stopped = false;
+    this.generation = (this.generation + 1) & 3;
+    for (Worker worker : this.allWorkers){
+      worker.nodes.reset();
+    }
+    if (this.rootGame == null){
+      this.rootGame = new TicTacToe(current);
+    } else {
+      if (this.rootGame.layout != current.layout){
+        this.rootGame.reset(current.numRows, current.numColumns, current.sizeToWin);
+      }
+      this.rootGame.copyFrom(current);
+    }
+
+    int best = fallback;
+    int empty = Math.min(numCells - current.numRounds, AlphaBetaSearch.MAX_DEPTH);
+    for (int depth = 1; depth <= empty; depth++){
+      SplitNode root = new SplitNode();
+      root.set(this.rootGame, 0, depth, 0, -AlphaBetaSearch.WIN - 1, AlphaBetaSearch.WIN + 1, null);
+      int score = this.pool.invoke(root);
+      if (this.stopped){
+        break;
+      }
+      best = this.rootMove;
+      this.bestScore = score;
+      //A proven win or loss will not change with a deeper search.
+      if (score > AlphaBetaSearch.WIN_BOUND || score < -AlphaBetaSearch.WIN_BOUND){
+        break;
+      }
+    }
+    this.stopped = true;
+    this.elapsed = System.nanoTime() - start;
+    return best;
+  }
+
+  /**
+   * Which position should the next player play, in a view of a
+   * game?  See bestMove(TicTacToe).
+   */
+  @Override
+  public int bestMove(GameView game) {
+    return bestMove(Player.searchable(game));
+  }
+
+  /**
+   * The score of the last move returned by bestMove(), from
+   * the point of view of the player who was to play.
+   *
+   * @return the score of the last search
+   */
+  public int lastScore() {
+    return this.bestScore;
+  }
+
+  /**
+   * How many positions each thread visited during the last search.
+   *
+   * @return the number of nodes searched by each thread
+   */
+  public long[] lastNodesPerThread() {
+    Worker[] list = this.allWorkers.toArray(new Worker[0]);
+    long[] nodes = new long[list.length];
+    for (int i = 0; i < list.length; i++){
+      nodes[i] = list[i].nodes.sum();
+    }
+    return nodes;
+  }
+
+  /**
+   * A report of the last search: the nodes searched and
+   * the nodes per second of each thread, and in total.
+   *
+   * @return one line per thread, then the total
+   */
+  public String report() {
+    StringBuilder b = new StringBuilder();
+    double seconds = Math.max(this.elapsed, 1) / 1e9;
+    long total = 0;
+    for (Worker worker : this.allWorkers){
+      long nodes = worker.nodes.sum();
+      total += nodes;
+      b.append(worker.name).append(": ").append(nodes).append(" nodes, ");
+      b.append((long) (nodes / seconds)).append(" nodes/sec\n");
+    }
+    b.append("Total: ").append(total).append(" nodes in ").append(this.elapsed / 1000000).append(" ms, ");
+    b.append((long) (total / seconds)).append(" nodes/sec\n");
+    return b.toString();
+  }
+
+  /**
+   * Stops the threads.  The player can not be used afterwards.
+   */
+  public void shutdown() {
+    this.pool.shutdown();
+  }
+
+  /**
+   * Searches one position: split it if it is deep enough,
+   * otherwise leave it to the thread's sequential search.
+   */
+  private int search(TicTacToe g, int depth, int ply, int alpha, int beta, SplitPoint split) {
+    Worker worker = this.workers.get();
+    if (depth < this.splitDepth){
+      worker.aborted = false;
+      return worker.negamax(g, depth, ply, alpha, beta, split);
+    }
+    worker.pendingNodes += 1;
+    if (this.stopped || isCutOff(split)){
+      return 0;
+    }
+    if (System.nanoTime() - this.deadline > 0){
+      this.stopped = true;
+      return 0;
+    }
+    if (g.gameState == GameState.DRAW){
+      return 0;
+    }
+    if (g.gameState != GameState.PLAYING){
+      return -(AlphaBetaSearch.WIN - ply);
+    }
+
+    int symmetry = g.canonicalSymmetry();
+    long key = g.symmetryHashes[symmetry];
+    long entry = this.table.probe(key);
+    int tableMove = 0;
+    if (entry != 0){
+      tableMove = AlphaBetaSearch.moveOf(entry) == 0 ? 0 : g.fromCanonical(AlphaBetaSearch.moveOf(entry), symmetry);
+      int stored = tableCutoff(entry, depth, ply, alpha, beta);
+      if (stored != NO_CUTOFF){
+        return stored;
+      }
+    }
+
+    //this thread may run other tasks while it waits for the younger brothers: the frame is its own until it returns.
+    Frame frame = worker.pushFrame();
+    try {
+      return split(g, depth, ply, alpha, beta, split, symmetry, key, tableMove, worker, frame);
+    } finally {
+      worker.popFrame();
+    }
+  }
+
+  /**
+   * The split part of search(): the eldest brother alone, then
+   * the younger ones in parallel, with the moves, the tasks and
+   * the split point of the frame.
+   */
+  private int split(TicTacToe g, int depth, int ply, int alpha, int beta, SplitPoint split,
+                    int symmetry, long key, int tableMove, Worker worker, Frame frame) {
+    AlphaBetaSearch.MoveList moves = frame.moves;
+    int count = AlphaBetaSearch.generateMoves(g, moves, worker.listed(g.numCells), worker.weights(g.sizeToWin), tableMove);
+    int originalAlpha = alpha;
+
+    //The eldest brother is searched first, alone.
+    int eldest = moves.select(0);
+    g.makeMove(eldest);
+    int best = -search(g, depth - 1, ply + 1, -beta, -alpha, split);
+    g.undo();
+    int bestMove = eldest;
+    if (best > alpha){
+      alpha = best;
+    }
+
+    //The younger brothers are searched in parallel, each on a copy of the game made by the thread that runs it.
+    if (alpha < beta && count > 1 && !this.stopped){
+      SplitPoint here = frame.here;
+      here.parent = split;
+      here.cutOff = false;
+      SplitNode[] brothers = frame.brothers(count);
+      for (int i = 1; i < count; i++){
+        brothers[i].set(g, moves.select(i), depth - 1, ply + 1, -beta, -alpha, here);
+        brothers[i].fork();
+      }
+      //every brother is joined, even after a cutoff: they read the game until they have copied it.
+      for (int i = 1; i < count; i++){
+        int score = -brothers[i].join();
+        if (here.cutOff){
+          continue;
+        }
+        if (this.stopped || isCutOff(split)){
+          here.cutOff = true;
+          continue;
+        }
+        if (score > best){
+          best = score;
+          bestMove = moves.moves[i];
+          if (score > alpha){
+            alpha = score;
+            if (alpha >= beta){
+              //the brothers still running have nothing left to do.
+              here.cutOff = true;
+            }
+          }
+        }
+      }
+    }
+    if (this.stopped || isCutOff(split)){
+      return 0;
+    }
+
+    storeResult(key, depth, ply, best, originalAlpha, beta, g.toCanonical(bestMove, symmetry));
+    if (ply == 0){
+      this.rootMove = bestMove;
+    }
+    return best;
+  }
+
+  /**
+   * Returned by tableCutoff() when the stored entry
+   * does not end the search of the position.
+   */
+  private static final int NO_CUTOFF = Integer.MIN_VALUE;
+
+  /**
+   * The stored score of the position, if it is deep enough
+   * and within the bounds to end its search.
+   */
+  private static int tableCutoff(long entry, int depth, int ply, int alpha, int beta) {
+    if (AlphaBetaSearch.depthOf(entry) < depth || ply == 0){
+      return NO_CUTOFF;
+    }
+    int score = AlphaBetaSearch.fromTable(AlphaBetaSearch.scoreOf(entry), ply);
+    int kind = AlphaBetaSearch.kindOf(entry);
+    if (kind == AlphaBetaSearch.EXACT
+        || (kind == AlphaBetaSearch.LOWER_BOUND && score >= beta)
+        || (kind == AlphaBetaSearch.UPPER_BOUND && score <= alpha)){
+      return score;
+    }
+    return NO_CUTOFF;
+  }
+
+  /**
+   * Stores the result of a search in the shared table.
+   */
+  private void storeResult(long key, int depth, int ply, int best, int originalAlpha, int beta, int bestMove) {
+    int kind = AlphaBetaSearch.EXACT;
+    if (best <= originalAlpha){
+      kind = AlphaBetaSearch.UPPER_BOUND;
+    } else if (best >= beta){
+      kind = AlphaBetaSearch.LOWER_BOUND;
+    }
+    long entry = AlphaBetaSearch.entry(AlphaBetaSearch.toTable(best, ply), bestMove, depth, kind, this.generation);
+    this.table.store(key, entry, this.generation);
+  }
+
+  /**
+   * Has a brother of this node, or of one of its ancestors,
+   * made the search of this node useless?
+   */
+  private static boolean isCutOff(SplitPoint split) {
+    for (SplitPoint s = split; s != null; s = s.parent){
+      if (s.cutOff){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A node whose younger brothers are searched in parallel.
+   * When one of them produces a cutoff, the others stop.  It is
+   * reused by the frame it belongs to once its brothers are done.
+   */
+  private static class SplitPoint {
+    SplitPoint parent;
+    volatile boolean cutOff;
+  }
+
+  /**
+   * The search of one position, the game of the task after a move,
+   * run by the pool.  A task is reused once it has been joined.
+   */
+  private class SplitNode extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = 1L;
+
+    private TicTacToe game;
+    private int move;
+    private int depth;
+    private int ply;
+    private int alpha;
+    private int beta;
+    private SplitPoint split;
+
+    /**
+     * Sets the position to search: the game after the move,
+     * or the game itself if the move is 0.  The game is not
+     * modified, the thread running the task searches a copy.
+     */
+    void set(TicTacToe game, int move, int depth, int ply, int alpha, int beta, SplitPoint split) {
+      reinitialize();
+      this.game = game;
+      this.move = move;
+      this.depth = depth;
+      this.ply = ply;
+      this.alpha = alpha;
+      this.beta = beta;
+      this.split = split;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (stopped || isCutOff(this.split)){
+        return 0;
+      }
+      Worker worker = workers.get();
+      TicTacToe copy = worker.pushGame(this.game);
+      try {
+        if (this.move != 0){
+          copy.makeMove(this.move);
+        }
+        return search(copy, this.depth, this.ply, this.alpha, this.beta, this.split);
+      } finally {
+        worker.popGame();
+        //the nodes are counted by the thread, and published at the end of each task.
+        worker.nodes.add(worker.pendingNodes);
+        worker.pendingNodes = 0;
+      }
+    }
+  }
+
+  /**
+   * What a split node of search() keeps while its brothers run:
+   * its moves, the tasks of its brothers and its split point.
+   */
+  private class Frame {
+    final AlphaBetaSearch.MoveList moves = new AlphaBetaSearch.MoveList();
+    final SplitPoint here = new SplitPoint();
+    SplitNode[] brothers = new SplitNode[0];
+
+    SplitNode[] brothers(int count) {
+      if (this.brothers.length < count){
+        int old = this.brothers.length;
+        this.brothers = java.util.Arrays.copyOf(this.brothers, count);
+        for (int i = old; i < count; i++){
+          this.brothers[i] = new SplitNode();
+        }
+      }
+      return this.brothers;
+    }
+  }
+
+  /**
+   * The sequential search of one thread, with its own move
+   * lists so that it does not allocate, and the frames and
+   * copies of the games of the split nodes it is running: the
+   * tasks a thread runs while it waits for a join return before
+   * the join does, so both are used as stacks.
+   */
+  private class Worker {
+    final String name;
+    final LongAdder nodes = new LongAdder();
+    long pendingNodes;
+    boolean aborted;
+    private AlphaBetaSearch.MoveList[] moveLists = new AlphaBetaSearch.MoveList[0];
+    private boolean[] listed = new boolean[0];
+    private long[] lineWeights;
+    private Frame[] frames = new Frame[0];
+    private int numFrames;
+    private TicTacToe[] games = new TicTacToe[0];
+    private int numGames;
+
+    Worker(String name) {
+      this.name = name;
+    }
+
+    Frame pushFrame() {
+      if (this.numFrames == this.frames.length){
+        this.frames = java.util.Arrays.copyOf(this.frames, 2 * this.numFrames + 4);
+      }
+      if (this.frames[this.numFrames] == null){
+        this.frames[this.numFrames] = new Frame();
+      }
+      this.numFrames += 1;
+      return this.frames[this.numFrames - 1];
+    }
+
+    void popFrame() {
+      this.numFrames -= 1;
+    }
+
+    /**
+     * A copy of the game, in a game of the thread.
+     */
+    TicTacToe pushGame(TicTacToe game) {
+      if (this.numGames == this.games.length){
+        this.games = java.util.Arrays.copyOf(this.games, 2 * this.numGames + 4);
+      }
+      TicTacToe copy = this.games[this.numGames];
+      if (copy == null){
+        copy = new TicTacToe(game);
+        this.games[this.numGames] = copy;
+      } else {
+        if (copy.layout != game.layout){
+          copy.reset(game.numRows, game.numColumns, game.sizeToWin);
+        }
+        copy.copyFrom(game);
+      }
+      this.numGames += 1;
+      return copy;
+    }
+
+    void popGame() {
+      this.numGames -= 1;
+    }
+
+    boolean[] listed(int numCells) {
+      if (this.listed.length < numCells){
+        this.listed = new boolean[numCells];
+      }
+      return this.listed;
+    }
+
+    long[] weights(int sizeToWin) {
+      if (this.lineWeights == null || this.lineWeights.length != sizeToWin + 1){
+        this.lineWeights = AlphaBetaSearch.lineWeights(sizeToWin);
+      }
+      return this.lineWeights;
+    }
+
+    int negamax(TicTacToe g, int depth, int ply, int alpha, int beta, SplitPoint split) {
+      this.pendingNodes += 1;
+      //the clock is read at each node, as in AlphaBetaSearch; the brothers are only checked from time to time.
+      if (System.nanoTime() - deadline > 0){
+        stopped = true;
+      }
+      if ((this.pendingNodes & 63) == 0 || stopped){
+        this.aborted = stopped || isCutOff(split);
+      }
+      if (this.aborted){
+        return 0;
+      }
+      if (g.gameState == GameState.DRAW){
+        return 0;
+      }
+      if (g.gameState != GameState.PLAYING){
+        return -(AlphaBetaSearch.WIN - ply);
+      }
+      if (depth == 0){
+        return AlphaBetaSearch.evaluate(g, weights(g.sizeToWin));
+      }
+
+      int symmetry = g.canonicalSymmetry();
+      long key = g.symmetryHashes[symmetry];
+      long entry = table.probe(key);
+      int tableMove = 0;
+      if (entry != 0){
+        tableMove = AlphaBetaSearch.moveOf(entry) == 0 ? 0 : g.fromCanonical(AlphaBetaSearch.moveOf(entry), symmetry);
+        int stored = tableCutoff(entry, depth, ply, alpha, beta);
+        if (stored != NO_CUTOFF){
+          return stored;
+        }
+      }
+
+      if (ply >= this.moveLists.length){
+        this.moveLists = java.util.Arrays.copyOf(this.moveLists, 2 * ply + 8);
+      }
+      if (this.moveLists[ply] == null){
+        this.moveLists[ply] = new AlphaBetaSearch.MoveList();
+      }
+      AlphaBetaSearch.MoveList moves = this.moveLists[ply];
+      int count = AlphaBetaSearch.generateMoves(g, moves, listed(g.numCells), weights(g.sizeToWin), tableMove);
+      int originalAlpha = alpha;
+      int best = -AlphaBetaSearch.WIN - 1;
+      int bestMove = 0;
+      for (int i = 0; i < count; i++){
+        int move = moves.select(i);
+        g.makeMove(move);
+        int score = -negamax(g, depth - 1, ply + 1, -beta, -alpha, split);
+        g.undo();
+        if (this.aborted){
+          return 0;
+        }
+        if (score > best){
+          best = score;
+          bestMove = move;
+          if (score > alpha){
+            alpha = score;
+            if (alpha >= beta){
+              break;
+            }
+          }
+        }
+      }
+
+      storeResult(key, depth, ply, best, originalAlpha, beta, g.toCanonical(bestMove, symmetry));
+      if (ply == 0){
+        rootMove = bestMove;
+      }
+      return best;
+    }
+  }
+
+  /**
+   * The lock-free transposition table.  Slot i is stored at
+   * 2i (the key XORed with the entry) and 2i+1 (the entry);
+   * a slot only matches a key if both longs agree.
+   */
+  static class SharedTable {
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    SharedTable(int bits) {
+      this.slots = new AtomicLongArray(2 << bits);
+      this.mask = (1 << bits) - 1;
+    }
+
+    /**
+     * The entry stored for the key, or 0 if there is none.
+     */
+    long probe(long key) {
+      int i = ((int) key & this.mask) << 1;
+      long entry = this.slots.get(i + 1);
+      if (entry != 0 && (this.slots.get(i) ^ entry) == key){
+        return entry;
+      }
+      return 0;
+    }
+
+    /**
+     * Stores an entry, unless the slot holds a deeper
+     * search of another position from the current move.
+     */
+    void store(long key, long entry, int generation) {
+      int i = ((int) key & this.mask) << 1;
+      long old = this.slots.get(i + 1);
+      if (old != 0 && (this.slots.get(i) ^ old) != key
+          && AlphaBetaSearch.depthOf(old) > AlphaBetaSearch.depthOf(entry)
+          && AlphaBetaSearch.generationOf(old) == generation){
+        return;
+      }
+      this.slots.lazySet(i, key ^ entry);
+      this.slots.lazySet(i + 1, entry);
+    }
+  }
+
+  /**
+   * Searches the first move of a game and prints the
+   * nodes per second of each thread, to check how the
+   * search scales with the number of threads.
+   *
+   * Parameters: rows columns sizeToWin threads milliseconds
+   *
+   * @param args command lines parameters
+   */
+  public static void main(String[] args) {
+    int rows = Integer.parseInt(args[0]);
+    int columns = Integer.parseInt(args[1]);
+    int wins = Integer.parseInt(args[2]);
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+    long millis = args.length > 4 ? Long.parseLong(args[4]) : 10000;
+
+    ParallelSearch search = new ParallelSearch(threads, 24, millis);
+    int move = search.bestMove(new TicTacToe(rows, columns, wins));
+    System.out.println("Best move: " + move + ", score: " + search.lastScore());
+    System.out.print(search.report());
+    search.shutdown();
+  }
+}
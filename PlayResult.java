@@ -0,0 +1,38 @@
+/**
+ * An enum class that defines the outcome of a move, as returned by
+ * TicTacToe.tryPlay():
+ *  <b>ACCEPTED</b>, the move was played and did not end the game,
+ *  <b>OFF_BOARD</b>, <b>OCCUPIED_X</b> and <b>OCCUPIED_O</b>, the
+ *  move was rejected and the game is unchanged,
+ *  <b>XWIN</b>, <b>OWIN</b> and <b>DRAW</b>, the move was played
+ *  and ended the game.
+ */
+public enum PlayResult {
+  ACCEPTED, OFF_BOARD, OCCUPIED_X, OCCUPIED_O, XWIN, OWIN, DRAW;
+
+  /**
+   * Was the move played?
+   */
+  public boolean isAccepted() {
+    return this != OFF_BOARD && this != OCCUPIED_X && this != OCCUPIED_O;
+  }
+
+  /**
+   * The message TicTacToe.play() returns for this outcome.
+   *
+   * @param position the position played
+   * @param numCells the number of cells of the board
+   * @return the message, or null for a move that did not end the game
+   */
+  public String message(int position, int numCells) {
+    switch (this){
+      case OFF_BOARD: return "The value should be between 1 and " + numCells;
+      case OCCUPIED_X: return "Cell " + position + " has already been played with X";
+      case OCCUPIED_O: return "Cell " + position + " has already been played with O";
+      case XWIN: return "Result: XWIN";
+      case OWIN: return "Result: OWIN";
+      case DRAW: return "Result: DRAW";
+      default: return null;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * The interface <b>Player</b> is a strategy for playing Tic Tac Toe:
+ * given a view of a game, it picks the position the next player
+ * plays.  The computer players (AlphaBetaSearch, ParallelSearch,
+ * MonteCarloSearch, Tablebase and RandomPlayer) are all Players, so a
+ * Tournament can play any of them against any other.
+ *
+ * A player is used by one thread at a time; a Tournament creates one
+ * instance of each player per thread.
+ */
+public interface Player {
+
+  /**
+   * Which position should the next player play?  The game is
+   * not modified.
+   *
+   * @param game the game to play in
+   * @return the 1-based position to play, or 0 if the board is full
+   */
+  int bestMove(GameView game);
+
+  /**
+   * Releases the threads of the player, if it has any.
+   */
+  default void shutdown() {
+  }
+
+  /**
+   * The game a view shows, as a TicTacToe the computer players can
+   * search: always a copy, since the view may be read-only (see
+   * TicTacToe.readOnlyView()).
+   */
+  static TicTacToe searchable(GameView game) {
+    return game.toTicTacToe();
+  }
+}
@@ -0,0 +1,50 @@
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>RandomPlayer</b> plays any empty position, uniformly
+ * at random: the weakest possible player, and the baseline others
+ * are rated against.
+ */
+public class RandomPlayer implements Player {
+
+  private final SplittableRandom random;
+
+  /**
+   * A player with a random seed.
+   */
+  public RandomPlayer() {
+    this.random = new SplittableRandom();
+  }
+
+  /**
+   * A player playing the same moves each time it is given the
+   * same seed and the same games.
+   *
+   * @param seed the seed of the random moves
+   */
+  public RandomPlayer(long seed) {
+    this.random = new SplittableRandom(seed);
+  }
+
+  @Override
+  public int bestMove(GameView game) {
+    if (game instanceof TicTacToe){
+      return ((TicTacToe) game).randomFreePosition(this.random);
+    }
+    int numCells = game.numRows() * game.numColumns();
+    int numEmpty = numCells - game.numRounds();
+    if (numEmpty <= 0){
+      return 0;
+    }
+    int skip = this.random.nextInt(numEmpty);
+    for (int position = 1; position <= numCells; position++){
+      if (game.valueAt(position) == CellValue.EMPTY){
+        if (skip == 0){
+          return position;
+        }
+        skip -= 1;
+      }
+    }
+    return 0;
+  }
+}
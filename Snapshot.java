@@ -0,0 +1,338 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class <b>Snapshot</b> saves the state of a TicTacToe game
+ * in a compact binary form, and restores it.
+ *
+ * A snapshot is a header followed by the board:
+ *
+ *  magic "T3" (2 bytes), version (1 byte),
+ *  game state (1 byte), current player (1 byte),
+ *  numRows, numColumns, sizeToWin, numRounds (4 bytes each),
+ *  then the cells, 2 bits each (0 empty, 1 X, 2 O),
+ *  4 cells per byte starting with the lowest bits.
+ *
+ * Snapshots are written to and read from ByteBuffers directly.
+ * Reading into an existing game of the same dimensions does not
+ * allocate anything.  The moves history is not saved, so a
+ * restored game can not undo the moves played before it was saved.
+ *
+ * Snapshot.Writer and Snapshot.Reader stream many snapshots to
+ * and from a single file through one reused buffer.
+ */
+public class Snapshot {
+
+  /**
+   * The first bytes of every snapshot.
+   */
+  static final short MAGIC = 0x5433;
+  static final byte VERSION = 1;
+
+  /**
+   * The number of bytes before the board.
+   */
+  static final int HEADER_SIZE = 21;
+
+  /**
+   * The largest boards restored: their layout must
+   * fit in that many table entries (see BoardLayout),
+   * as for the games of a Batch.
+   */
+  static final long MAX_LAYOUT_ENTRIES = Batch.MAX_LAYOUT_ENTRIES;
+
+  /**
+   * The values of the saved ordinals, kept since values() copies them.
+   */
+  private static final GameState[] STATES = GameState.values();
+  private static final CellValue[] PLAYERS = CellValue.values();
+
+  /**
+   * The number of bytes of the snapshot of a game of the provided size.
+   *
+   * @param numRows the number of lines in the game
+   * @param numColumns the number of columns in the game
+   * @return the size of the snapshot in bytes
+   */
+  public static int size(int numRows, int numColumns) {
+    return HEADER_SIZE + (int) (((long) numRows * numColumns + 3) / 4);
+  }
+
+  /**
+   * Writes the snapshot of a game at the current position of the buffer.
+   *
+   * @param game the game to save
+   * @param out the buffer to write to, with enough room left
+   */
+  public static void write(TicTacToe game, ByteBuffer out) {
+    out.putShort(MAGIC);
+    out.put(VERSION);
+    out.put((byte) game.gameState.ordinal());
+    out.put((byte) game.currentPlayer.ordinal());
+    out.putInt(game.numRows);
+    out.putInt(game.numColumns);
+    out.putInt(game.sizeToWin);
+    out.putInt(game.numRounds);
+
+    long[] xs = game.xBits;
+    long[] os = game.oBits;
+    int numCells = game.numRows * game.numColumns;
+    for (int cell = 0; cell < numCells; cell += 4){
+      int packed = 0;
+      for (int i = 0; i < 4 && cell + i < numCells; i++){
+        int c = cell + i;
+        int value = (int) (xs[c >>> 6] >>> c) & 1 | ((int) (os[c >>> 6] >>> c) & 1) << 1;
+        packed |= value << (2 * i);
+      }
+      out.put((byte) packed);
+    }
+  }
+
+  /**
+   * Reads a snapshot at the current position of the buffer into a new game.
+   *
+   * @param in the buffer to read from
+   * @return the restored game
+   */
+  public static TicTacToe read(ByteBuffer in) {
+    return read(in, null);
+  }
+
+  /**
+   * Reads a snapshot at the current position of the buffer.  The
+   * provided game is reset to the dimensions of the snapshot and
+   * reused, see TicTacToe.reset().  The whole board is checked
+   * against the saved state with LineScanner.validate(), since it
+   * was not played move by move.
+   *
+   * @param in the buffer to read from
+   * @param reuse a game to restore into, or null
+   * @return the restored game: reuse, or a new game
+   */
+  public static TicTacToe read(ByteBuffer in, TicTacToe reuse) {
+    if (in.getShort() != MAGIC){
+      throw new IllegalArgumentException("Not a TicTacToe snapshot");
+    }
+    byte version = in.get();
+    if (version != VERSION){
+      throw new IllegalArgumentException("Unknown snapshot version " + version);
+    }
+    int stateOrdinal = in.get();
+    if (stateOrdinal < 0 || stateOrdinal >= STATES.length){
+      throw new IllegalArgumentException("Invalid snapshot: unknown game state " + stateOrdinal);
+    }
+    int playerOrdinal = in.get();
+    if (playerOrdinal < 0 || playerOrdinal >= PLAYERS.length){
+      throw new IllegalArgumentException("Invalid snapshot: unknown player " + playerOrdinal);
+    }
+    GameState state = STATES[stateOrdinal];
+    CellValue player = PLAYERS[playerOrdinal];
+    int numRows = in.getInt();
+    int numColumns = in.getInt();
+    int sizeToWin = in.getInt();
+    int numRounds = in.getInt();
+    String problem = checkDimensions(numRows, numColumns, sizeToWin);
+    if (problem != null){
+      throw new IllegalArgumentException("Invalid snapshot: " + problem);
+    }
+    //the whole board must be there before a game is made for it.
+    int boardSize = size(numRows, numColumns) - HEADER_SIZE;
+    if (in.remaining() < boardSize){
+      throw new IllegalArgumentException("Invalid snapshot: " + boardSize
+        + " bytes of board expected, " + in.remaining() + " left");
+    }
+
+    TicTacToe game = reuse;
+    if (game == null){
+      game = new TicTacToe(numRows, numColumns, sizeToWin);
+    } else {
+      game.reset(numRows, numColumns, sizeToWin);
+    }
+
+    int numCells = numRows * numColumns;
+    for (int cell = 0; cell < numCells; cell += 4){
+      int packed = in.get();
+      for (int i = 0; i < 4 && cell + i < numCells; i++){
+        int value = (packed >>> (2 * i)) & 3;
+        if (value == 1){
+          game.setCell(cell + i, CellValue.X);
+        } else if (value == 2){
+          game.setCell(cell + i, CellValue.O);
+        }
+      }
+    }
+
+    game.numRounds = numRounds;
+    game.gameState = state;
+    game.currentPlayer = player;
+    //a restored winner is kept, since the winning move can not be undone.
+    if (state == GameState.XWIN || state == GameState.OWIN){
+      game.winRound = numRounds;
+    }
+    problem = LineScanner.validate(game);
+    if (problem != null){
+      throw new IllegalArgumentException("Invalid snapshot: " + problem);
+    }
+    return game;
+  }
+
+  /**
+   * Checks the dimensions read from a snapshot before a game is
+   * made of them: a corrupt header must not allocate a huge board,
+   * so the layout of the board must fit in MAX_LAYOUT_ENTRIES.
+   *
+   * @return why the dimensions are not those of a game, or null if they are
+   */
+  static String checkDimensions(int numRows, int numColumns, int sizeToWin) {
+    if (numRows < 1 || numColumns < 1 || sizeToWin < 1){
+      return "dimensions " + numRows + "x" + numColumns + "/" + sizeToWin;
+    }
+    if ((long) numRows * numColumns > Integer.MAX_VALUE){
+      return "a board of " + numRows + "x" + numColumns + " cells";
+    }
+    if (BoardLayout.estimateEntries(numRows, numColumns, sizeToWin) > MAX_LAYOUT_ENTRIES){
+      return "a board of " + numRows + "x" + numColumns + "/" + sizeToWin + " is too large";
+    }
+    return null;
+  }
+
+  /**
+   * Writes snapshots one after the other to a file, through
+   * a single buffer that is written out when it is full.
+   */
+  public static class Writer implements Closeable {
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * Creates (or empties) the file to write snapshots to.
+     *
+     * @param file the file to write
+     */
+    public Writer(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Adds the snapshot of a game to the file.  Games too large
+     * for a Reader to restore are refused.
+     *
+     * @param game the game to save
+     */
+    public void write(TicTacToe game) throws IOException {
+      String problem = checkDimensions(game.numRows, game.numColumns, game.sizeToWin);
+      if (problem != null){
+        throw new IllegalArgumentException("Can not save " + problem);
+      }
+      int size = size(game.numRows, game.numColumns);
+      if (this.buffer.remaining() < size){
+        flush();
+        if (this.buffer.capacity() < size){
+          this.buffer = ByteBuffer.allocateDirect(size);
+        }
+      }
+      Snapshot.write(game, this.buffer);
+    }
+
+    /**
+     * Writes out what is in the buffer.
+     */
+    public void flush() throws IOException {
+      this.buffer.flip();
+      while (this.buffer.hasRemaining()){
+        this.channel.write(this.buffer);
+      }
+      this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+      this.channel.close();
+    }
+  }
+
+  /**
+   * Reads back the snapshots of a file written by a Writer,
+   * through a single buffer refilled as needed.
+   */
+  public static class Reader implements Closeable {
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * Opens a file of snapshots.
+     *
+     * @param file the file to read
+     */
+    public Reader(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.READ);
+      this.buffer.flip();
+    }
+
+    /**
+     * Reads the next snapshot, into the provided game if it has the
+     * same dimensions, otherwise into a new game.
+     *
+     * @param reuse a game to restore into, or null
+     * @return the restored game, or null at the end of the file
+     */
+    public TicTacToe next(TicTacToe reuse) throws IOException {
+      if (!fill(HEADER_SIZE)){
+        if (this.buffer.hasRemaining()){
+          throw new IOException("The last snapshot is incomplete");
+        }
+        return null;
+      }
+      int start = this.buffer.position();
+      int numRows = this.buffer.getInt(start + 5);
+      int numColumns = this.buffer.getInt(start + 9);
+      int sizeToWin = this.buffer.getInt(start + 13);
+      //checked before the buffer grows to the size of the snapshot.
+      String problem = checkDimensions(numRows, numColumns, sizeToWin);
+      if (problem != null){
+        throw new IOException("Invalid snapshot: " + problem);
+      }
+      int size = size(numRows, numColumns);
+      if (!fill(size)){
+        throw new IOException("The last snapshot is incomplete");
+      }
+      return read(this.buffer, reuse);
+    }
+
+    /**
+     * Makes sure that the buffer holds at least count bytes.
+     *
+     * @return false if the file ended before
+     */
+    private boolean fill(int count) throws IOException {
+      if (this.buffer.remaining() >= count){
+        return true;
+      }
+      if (this.buffer.capacity() < count){
+        ByteBuffer bigger = ByteBuffer.allocateDirect(count);
+        bigger.put(this.buffer);
+        this.buffer = bigger;
+      } else {
+        this.buffer.compact();
+      }
+      while (this.buffer.position() < count){
+        if (this.channel.read(this.buffer) < 0){
+          break;
+        }
+      }
+      this.buffer.flip();
+      return this.buffer.remaining() >= count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.channel.close();
+    }
+  }
+}
@@ -0,0 +1,407 @@
+/**
+ * The class <b>SparseTicTacToe</b> is a Tic Tac Toe game for boards
+ * that are too big to be stored cell by cell, such as 10000x10000
+ * grids, or grids without any bounds (gomoku-style games).
+ *
+ * Only the cells that have been played are stored, in a hash table
+ * keyed by (row, column), so the memory used grows with the number
+ * of moves and not with the size of the board.  The rules are the
+ * same as TicTacToe: X plays first, the first player to align
+ * sizeToWin cells wins, and play can continue after a win.
+ *
+ * On a bounded board, positions are numbered as in TicTacToe and
+ * play(position) and valueAt(row, column) behave the same way.  On
+ * an unbounded board, every (row, column) is a cell, negative ones
+ * included, and the game is never a draw.
+ */
+public class SparseTicTacToe {
+
+  /**
+   * The number of rows and columns of the grid,
+   * or 0 if the grid is unbounded.
+   */
+  int numRows;
+  int numColumns;
+
+  /**
+   * How many rounds have the players played so far.
+   */
+  int numRounds;
+
+  /**
+   * What is the current state of the game
+   */
+  GameState gameState;
+
+  /**
+   * How many cells of the same type must be aligned to win.
+   */
+  int sizeToWin;
+
+  /**
+   * Who is the current player?
+   */
+  CellValue currentPlayer;
+
+  /**
+   * The cells that have been played.
+   */
+  final Cells cells = new Cells();
+
+  /**
+   * The smallest rectangle holding every cell played,
+   * which is the part of the grid that toString() shows.
+   */
+  int minRow;
+  int maxRow;
+  int minColumn;
+  int maxColumn;
+
+  /**
+   * The most cells toString() shows: the 4 characters of each cell
+   * of a larger region would not fit in a String, or on a screen.
+   */
+  static final long MAX_SHOWN_CELLS = 1 << 16;
+
+  /**
+   * A game on an unbounded grid.
+   *
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   */
+  public SparseTicTacToe(int aSizeToWin) {
+    this(0, 0, aSizeToWin);
+  }
+
+  /**
+   * A game on a numRows x numColumns grid, or on an
+   * unbounded grid if both dimensions are 0.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   */
+  public SparseTicTacToe(int aNumRows, int aNumColumns, int aSizeToWin) {
+    if (aNumRows < 0 || aNumColumns < 0 || (aNumRows == 0) != (aNumColumns == 0)){
+      throw new IllegalArgumentException("Invalid grid " + aNumRows + "x" + aNumColumns);
+    }
+    this.numRows = aNumRows;
+    this.numColumns = aNumColumns;
+    this.sizeToWin = aSizeToWin;
+    this.numRounds = 0;
+    this.gameState = GameState.PLAYING;
+    this.currentPlayer = CellValue.EMPTY;
+  }
+
+  /**
+   * Does the grid go on forever?
+   *
+   * @return true if every (row, column) is a cell
+   */
+  public boolean isUnbounded() {
+    return this.numRows == 0;
+  }
+
+  /**
+   * Who should play next (X or O).
+   *
+   * @return The player that should play next.
+   */
+  public CellValue nextPlayer() {
+    if (this.currentPlayer == CellValue.X){
+      return CellValue.O;
+    }
+    return CellValue.X;
+  }
+
+  /**
+   * What is the value at the provided 1-based position,
+   * numbered as in TicTacToe.  Every position is invalid
+   * on an unbounded grid.
+   *
+   * @param position The position on the board to look up its current value
+   * @return The CellValue at that position
+   */
+  public CellValue valueAt(int position) {
+    long cell = position - 1L;
+    if (isUnbounded() || cell < 0 || cell >= (long) this.numRows * this.numColumns){
+      return CellValue.INVALID;
+    }
+    return this.cells.get((int) (cell / this.numColumns) + 1, (int) (cell % this.numColumns) + 1);
+  }
+
+  /**
+   * What is the value at the provided row and column number (1-based).
+   *
+   * If the row/column is off a bounded grid, return CellValue.INVALID.
+   *
+   * @param row The row of the cell
+   * @param column The column of the cell
+   * @return The CellValue at that row/column
+   */
+  public CellValue valueAt(int row, int column) {
+    if (!isUnbounded() && (row < 1 || row > this.numRows || column < 1 || column > this.numColumns)){
+      return CellValue.INVALID;
+    }
+    return this.cells.get(row, column);
+  }
+
+  /**
+   * Display the state of the board and ask the next player to
+   * play, as TicTacToe.show() does.
+   *
+   * @return An array of messages to display.
+   */
+  public String[] show() {
+    String[] view = new String[2];
+    view[0] = toString();
+    view[1] = nextPlayer() == CellValue.X ? "X to play: " : "O to play: ";
+    return view;
+  }
+
+  /**
+   * The next player has decided their move to the provided position,
+   * numbered as in TicTacToe.  Only bounded grids have positions.
+   *
+   * @param position The position that has been selected by the next player.
+   * @return The same messages as TicTacToe.play()
+   */
+  public String play(int position) {
+    if (isUnbounded()){
+      return "An unbounded grid is played by row and column";
+    }
+    long cell = position - 1L;
+    long numCells = (long) this.numRows * this.numColumns;
+    if (cell < 0 || cell >= numCells){
+      return "The value should be between 1 and " + numCells;
+    }
+    int row = (int) (cell / this.numColumns) + 1;
+    int column = (int) (cell % this.numColumns) + 1;
+    CellValue value = this.cells.get(row, column);
+    if (value != CellValue.EMPTY){
+      return "Cell " + position + " has already been played with " + value;
+    }
+    return makeMove(row, column);
+  }
+
+  /**
+   * The next player has decided their move to the provided
+   * row and column (1-based).
+   *
+   * @param row The row of the cell played
+   * @param column The column of the cell played
+   * @return A message if the move is invalid or ends the game,
+   *         null otherwise, as for play(position)
+   */
+  public String play(int row, int column) {
+    CellValue value = valueAt(row, column);
+    if (value == CellValue.INVALID){
+      return "The row should be between 1 and " + this.numRows
+        + " and the column between 1 and " + this.numColumns;
+    }
+    if (value != CellValue.EMPTY){
+      return "Cell (" + row + ", " + column + ") has already been played with " + value;
+    }
+    return makeMove(row, column);
+  }
+
+  /**
+   * Plays an empty cell and updates the state of the game.
+   */
+  private String makeMove(int row, int column) {
+    CellValue player = nextPlayer();
+    this.cells.put(row, column, player);
+    if (this.numRounds == 0){
+      this.minRow = this.maxRow = row;
+      this.minColumn = this.maxColumn = column;
+    } else {
+      this.minRow = Math.min(this.minRow, row);
+      this.maxRow = Math.max(this.maxRow, row);
+      this.minColumn = Math.min(this.minColumn, column);
+      this.maxColumn = Math.max(this.maxColumn, column);
+    }
+    this.numRounds += 1;
+    this.currentPlayer = player;
+
+    //as in TicTacToe, the winner of the game is the player who won first.
+    if (this.gameState != GameState.PLAYING){
+      return null;
+    }
+    if (checkForWinner(row, column, player)){
+      this.gameState = player == CellValue.X ? GameState.XWIN : GameState.OWIN;
+      return "Result: " + this.gameState;
+    }
+    if (!isUnbounded() && this.numRounds == (long) this.numRows * this.numColumns){
+      this.gameState = GameState.DRAW;
+      return "Result: DRAW";
+    }
+    return null;
+  }
+
+  /**
+   * Has the player aligned sizeToWin cells through the cell just
+   * played?  Each direction is scanned outward from the cell on
+   * both sides, until a cell that is not the player's.
+   */
+  private boolean checkForWinner(int row, int column, CellValue player) {
+    for (int d = 0; d < BoardLayout.ROW_STEP.length; d++){
+      int dr = BoardLayout.ROW_STEP[d];
+      int dc = BoardLayout.COLUMN_STEP[d];
+      int aligned = 1;
+      for (int i = 1; aligned < this.sizeToWin && this.cells.get(row + i * dr, column + i * dc) == player; i++){
+        aligned += 1;
+      }
+      for (int i = 1; aligned < this.sizeToWin && this.cells.get(row - i * dr, column - i * dc) == player; i++){
+        aligned += 1;
+      }
+      if (aligned >= this.sizeToWin){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A text based representation of the part of the grid holding
+   * the cells played (from the first to the last row and column
+   * played), in the same format as TicTacToe.toString().  The
+   * text is empty before the first move.  A region of more than
+   * MAX_SHOWN_CELLS cells is not shown, only its size.
+   *
+   * @return String representation of the game
+   */
+  public String toString() {
+    if (this.numRounds == 0){
+      return "";
+    }
+    long spannedRows = (long) this.maxRow - this.minRow + 1;
+    long spannedColumns = (long) this.maxColumn - this.minColumn + 1;
+    if (spannedRows > MAX_SHOWN_CELLS || spannedColumns > MAX_SHOWN_CELLS
+        || spannedRows * spannedColumns > MAX_SHOWN_CELLS){
+      return "The cells played span " + spannedRows + " x " + spannedColumns + " cells, too many to show";
+    }
+    int rows = (int) spannedRows;
+    int columns = (int) spannedColumns;
+    //each row is 4 characters per cell but the last, and each row but the first adds a line and two newlines.
+    StringBuilder b = new StringBuilder(rows * (4 * columns - 1) + (rows - 1) * (4 * columns + 1));
+    for (int i = 0; i < rows; i++){
+      if (i > 0){
+        b.append('\n');
+        for (int k = 0; k < columns; k++){
+          b.append(k == columns - 1 ? "---" : "----");
+        }
+        b.append('\n');
+      }
+      for (int j = 0; j < columns; j++){
+        CellValue value = this.cells.get(this.minRow + i, this.minColumn + j);
+        b.append(' ').append(value == CellValue.EMPTY ? ' ' : value.name().charAt(0)).append(' ');
+        if (j < columns - 1){
+          b.append('|');
+        }
+      }
+    }
+    return b.toString();
+  }
+
+  /**
+   * Expose all internal data for debugging purposes.
+   *
+   * @return String representation of the game
+   */
+  public String toDebug() {
+    StringBuilder b = new StringBuilder();
+    if (isUnbounded()){
+      b.append("Grid (rows x columns): unbounded");
+    } else {
+      b.append("Grid (rows x columns): " + numRows + " x " + numColumns);
+    }
+    b.append("\n");
+    b.append("Size To Win: " + sizeToWin);
+    b.append("\n");
+    b.append("Num Rounds: " + numRounds);
+    b.append("\n");
+    b.append("Game State: " + gameState);
+    b.append("\n");
+    b.append("Current Player: " + currentPlayer);
+    b.append("\n");
+    b.append("Next Player: " + nextPlayer());
+    b.append("\n");
+    b.append("Cells played: " + cells.size + " (table of " + cells.keys.length + ")");
+    b.append("\n");
+    return b.toString();
+  }
+
+  /**
+   * The cells played: an open-addressing hash table from the
+   * (row, column) packed in a long to X or O, with linear probing.
+   * Keys and values are kept in primitive arrays, so that no
+   * object is created per cell.  Cells are never removed.
+   */
+  static final class Cells {
+    private static final byte FREE = 0;
+    private static final byte X = 1;
+    private static final byte O = 2;
+
+    long[] keys = new long[16];
+    byte[] values = new byte[16];
+    int size;
+
+    CellValue get(int row, int column) {
+      long key = key(row, column);
+      int mask = this.keys.length - 1;
+      for (int i = slot(key) & mask; this.values[i] != FREE; i = (i + 1) & mask){
+        if (this.keys[i] == key){
+          return this.values[i] == X ? CellValue.X : CellValue.O;
+        }
+      }
+      return CellValue.EMPTY;
+    }
+
+    /**
+     * Adds a cell, which must not be in the table yet.
+     */
+    void put(int row, int column, CellValue value) {
+      //the table is kept at most half full, so that probes stay short.
+      if (2 * (this.size + 1) > this.keys.length){
+        grow();
+      }
+      insert(key(row, column), value == CellValue.X ? X : O);
+      this.size += 1;
+    }
+
+    private void insert(long key, byte value) {
+      int mask = this.keys.length - 1;
+      int i = slot(key) & mask;
+      while (this.values[i] != FREE){
+        i = (i + 1) & mask;
+      }
+      this.keys[i] = key;
+      this.values[i] = value;
+    }
+
+    private void grow() {
+      long[] oldKeys = this.keys;
+      byte[] oldValues = this.values;
+      this.keys = new long[2 * oldKeys.length];
+      this.values = new byte[2 * oldValues.length];
+      for (int i = 0; i < oldKeys.length; i++){
+        if (oldValues[i] != FREE){
+          insert(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    private static long key(int row, int column) {
+      return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Mixes all the bits of the key, since neighbouring
+     * cells only differ in their lowest bits.
+     */
+    private static int slot(long key) {
+      key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+      key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      return (int) (key ^ (key >>> 33));
+    }
+  }
+}
@@ -0,0 +1,390 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class <b>Tablebase</b> holds the perfect-play result of every
+ * reachable position of a small game (up to 16 cells, such as 3x3,
+ * 3x4 or 4x4), so that the best move is known without any search.
+ *
+ * Positions are indexed in base 3: cell i counts 3^i times 1 for an
+ * X and 2 for an O.  Each position has one byte: its result for the
+ * player to move in the two highest bits (WIN, DRAW or LOSS, 0 for a
+ * position that can not be reached) and the number of moves to the
+ * end of the game with perfect play in the six lowest bits.  Games
+ * stop at the first win, as players usually do.
+ *
+ * The table is solved by retrograde analysis, one layer of positions
+ * (positions with the same number of marks) at a time: a first pass
+ * finds the reachable positions of each layer and scores the ones
+ * that end the game, then the layers are solved from the fullest to
+ * the empty board, each position from the positions one move after.
+ *
+ * The table is saved as a header followed by the bytes, and is
+ * memory-mapped when opened, so a program starting up only maps the
+ * file and probes it in constant time by index.
+ *
+ * Usage: java Tablebase rows columns win [file]
+ * (the default file is tictactoe-ROWSxCOLUMNS-WIN.tb)
+ */
+public class Tablebase implements Player {
+
+  /**
+   * The largest board a table can be built for.
+   */
+  static final int MAX_CELLS = 16;
+
+  /**
+   * The results, in the two highest bits of an entry.
+   */
+  public static final int UNKNOWN = 0;
+  public static final int WIN = 1;
+  public static final int DRAW = 2;
+  public static final int LOSS = 3;
+
+  /**
+   * The file header: magic "T3TB", version, numRows,
+   * numColumns, sizeToWin and the number of entries.
+   */
+  static final int MAGIC = 0x54335442;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+
+  private final int numRows;
+  private final int numColumns;
+  private final int sizeToWin;
+  private final int numCells;
+  private final ByteBuffer entries;
+
+  private Tablebase(int aNumRows, int aNumColumns, int aSizeToWin, ByteBuffer entries) {
+    this.numRows = aNumRows;
+    this.numColumns = aNumColumns;
+    this.sizeToWin = aSizeToWin;
+    this.numCells = aNumRows * aNumColumns;
+    this.entries = entries;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int rows = Integer.parseInt(args[0]);
+    int columns = Integer.parseInt(args[1]);
+    int wins = Integer.parseInt(args[2]);
+    Path file = args.length > 3 ? Paths.get(args[3]) : defaultFile(rows, columns, wins);
+
+    long start = System.nanoTime();
+    Tablebase table = solve(rows, columns, wins);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    table.write(file);
+    int root = table.entry(0);
+    System.out.printf("%dx%d/%d solved in %.2f s: %s in %d moves, written to %s%n", rows, columns, wins,
+      seconds, resultName(root >>> 6), root & 63, file);
+  }
+
+  /**
+   * The file a table is saved to by default, in the current directory.
+   */
+  public static Path defaultFile(int numRows, int numColumns, int sizeToWin) {
+    return Paths.get("tictactoe-" + numRows + "x" + numColumns + "-" + sizeToWin + ".tb");
+  }
+
+  /**
+   * Maps the table of a game saved in the default file.
+   *
+   * @return the table, or null if there is no such file
+   */
+  public static Tablebase open(int numRows, int numColumns, int sizeToWin) throws IOException {
+    Path file = defaultFile(numRows, numColumns, sizeToWin);
+    if (!Files.exists(file)){
+      return null;
+    }
+    Tablebase table = open(file);
+    if (table.numRows != numRows || table.numColumns != numColumns || table.sizeToWin != sizeToWin){
+      throw new IOException(file + " is not the table of a " + numRows + "x" + numColumns + "/" + sizeToWin + " game");
+    }
+    return table;
+  }
+
+  /**
+   * Maps a table saved by write().
+   *
+   * @param file the file of the table
+   * @return the table, backed by the mapped file
+   */
+  public static Tablebase open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (channel.size() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION){
+        throw new IOException(file + " is not a tablebase");
+      }
+      int rows = mapped.getInt(8);
+      int columns = mapped.getInt(12);
+      int wins = mapped.getInt(16);
+      long count = mapped.getLong(20);
+      if (count != power(rows * columns) || channel.size() != HEADER_SIZE + count){
+        throw new IOException(file + " is incomplete");
+      }
+      mapped.position(HEADER_SIZE);
+      return new Tablebase(rows, columns, wins, mapped.slice());
+    }
+  }
+
+  /**
+   * Saves the table: the header, then one byte per position.
+   */
+  public void write(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(this.numRows).putInt(this.numColumns)
+        .putInt(this.sizeToWin).putLong(this.entries.capacity());
+      header.clear();
+      while (header.hasRemaining()){
+        channel.write(header);
+      }
+      ByteBuffer body = this.entries.duplicate();
+      body.clear();
+      while (body.hasRemaining()){
+        channel.write(body);
+      }
+    }
+  }
+
+  /**
+   * Computes the table of a game.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win
+   * @return the solved table, in memory
+   */
+  public static Tablebase solve(int aNumRows, int aNumColumns, int aSizeToWin) {
+    int numCells = aNumRows * aNumColumns;
+    if (numCells > MAX_CELLS){
+      throw new IllegalArgumentException("Tables are limited to " + MAX_CELLS + " cells");
+    }
+    byte[] table = new byte[(int) power(numCells)];
+    int[] powers = new int[numCells];
+    for (int i = 0; i < numCells; i++){
+      powers[i] = (int) power(i);
+    }
+
+    //Forward pass: the reachable positions of each layer, with the positions that end the game scored.
+    Layers layers = new Layers(numCells);
+    TicTacToe game = new TicTacToe(aNumRows, aNumColumns, aSizeToWin);
+    table[0] = (byte) 0xFF;
+    layers.add(0, 0);
+    reach(game, 0, powers, table, layers);
+
+    //Backward pass: each layer from the positions of the next one.
+    for (int marks = numCells - 1; marks >= 0; marks--){
+      int digit = marks % 2 == 0 ? 1 : 2;
+      for (int k = 0; k < layers.sizes[marks]; k++){
+        int index = layers.positions[marks][k];
+        int entry = table[index] & 0xFF;
+        if (entry != 0xFF){
+          continue;
+        }
+        int bestWin = -1;
+        int slowestLoss = -1;
+        int longestDraw = -1;
+        int rest = index;
+        for (int cell = 0; cell < numCells; cell++){
+          if (rest % 3 == 0){
+            int child = table[index + digit * powers[cell]] & 0xFF;
+            int distance = child & 63;
+            int result = child >>> 6;
+            //the result of the child is for the other player.
+            if (result == LOSS && (bestWin < 0 || distance < bestWin)){
+              bestWin = distance;
+            } else if (result == DRAW && distance > longestDraw){
+              longestDraw = distance;
+            } else if (result == WIN && distance > slowestLoss){
+              slowestLoss = distance;
+            }
+          }
+          rest /= 3;
+        }
+        if (bestWin >= 0){
+          table[index] = encode(WIN, bestWin + 1);
+        } else if (longestDraw >= 0){
+          table[index] = encode(DRAW, longestDraw + 1);
+        } else {
+          table[index] = encode(LOSS, slowestLoss + 1);
+        }
+      }
+    }
+    return new Tablebase(aNumRows, aNumColumns, aSizeToWin, ByteBuffer.wrap(table));
+  }
+
+  /**
+   * Walks the reachable positions from a game, adding each new one
+   * to its layer.  Positions ending the game are scored right away,
+   * the others are marked 0xFF until the backward pass.
+   */
+  private static void reach(TicTacToe game, int index, int[] powers, byte[] table, Layers layers) {
+    int digit = game.nextPlayer() == CellValue.X ? 1 : 2;
+    for (int cell = 0; cell < powers.length; cell++){
+      if (game.board[cell] != ' '){
+        continue;
+      }
+      int child = index + digit * powers[cell];
+      if (table[child] != 0){
+        continue;
+      }
+      game.makeMove(cell + 1);
+      layers.add(game.numRounds, child);
+      if (game.gameState == GameState.DRAW){
+        table[child] = encode(DRAW, 0);
+      } else if (game.gameState != GameState.PLAYING){
+        //the player who just won is not the player to move.
+        table[child] = encode(LOSS, 0);
+      } else {
+        table[child] = (byte) 0xFF;
+        reach(game, child, powers, table, layers);
+      }
+      game.undo();
+    }
+  }
+
+  private static byte encode(int result, int distance) {
+    return (byte) (result << 6 | distance);
+  }
+
+  /**
+   * 3 to the provided power.
+   */
+  static long power(int exponent) {
+    long value = 1;
+    for (int i = 0; i < exponent; i++){
+      value *= 3;
+    }
+    return value;
+  }
+
+  /**
+   * The index of the position of a game of this table.
+   *
+   * @param game the game, of the dimensions of the table
+   * @return its index
+   */
+  public int indexOf(TicTacToe game) {
+    int index = 0;
+    for (int cell = this.numCells - 1; cell >= 0; cell--){
+      char c = game.board[cell];
+      index = index * 3 + (c == 'X' ? 1 : c == 'O' ? 2 : 0);
+    }
+    return index;
+  }
+
+  /**
+   * The entry of a position: its result in the two highest
+   * bits, and its distance in the six lowest bits.
+   *
+   * @param index the index of the position
+   * @return the entry, 0 for a position that can not be reached
+   */
+  public int entry(int index) {
+    return this.entries.get(index) & 0xFF;
+  }
+
+  /**
+   * The result of a position for the player to move.
+   *
+   * @return WIN, DRAW, LOSS, or UNKNOWN if the position can not be reached
+   */
+  public int result(TicTacToe game) {
+    return entry(indexOf(game)) >>> 6;
+  }
+
+  /**
+   * The number of moves to the end of the game with perfect play.
+   */
+  public int distance(TicTacToe game) {
+    return entry(indexOf(game)) & 63;
+  }
+
+  /**
+   * The perfect move for the next player: the fastest win, else a
+   * draw, else the slowest loss.  If the game is over (or is not
+   * in the table), the first empty position is returned.
+   *
+   * @param game a game of the dimensions of the table
+   * @return the 1-based position to play, or 0 if the board is full
+   */
+  public int bestMove(TicTacToe game) {
+    int index = indexOf(game);
+    int digit = game.nextPlayer() == CellValue.X ? 1 : 2;
+    int first = 0;
+    int best = 0;
+    int bestRank = Integer.MAX_VALUE;
+    int power = 1;
+    for (int cell = 0; cell < this.numCells; cell++, power *= 3){
+      if (game.board[cell] != ' '){
+        continue;
+      }
+      if (first == 0){
+        first = cell + 1;
+      }
+      int child = entry(index + digit * power);
+      int distance = child & 63;
+      int rank;
+      switch (child >>> 6){
+        case LOSS: rank = distance; break;
+        case DRAW: rank = 100; break;
+        case WIN: rank = 200 - distance; break;
+        default: rank = Integer.MAX_VALUE - 1;
+      }
+      if (rank < bestRank){
+        bestRank = rank;
+        best = cell + 1;
+      }
+    }
+    if (game.gameState != GameState.PLAYING || entry(index) == 0){
+      return first;
+    }
+    return best;
+  }
+
+  /**
+   * Which position should the next player play, in a view of a
+   * game?  See bestMove(TicTacToe).
+   */
+  @Override
+  public int bestMove(GameView game) {
+    return bestMove(Player.searchable(game));
+  }
+
+  static String resultName(int result) {
+    switch (result){
+      case WIN: return "WIN";
+      case DRAW: return "DRAW";
+      case LOSS: return "LOSS";
+      default: return "UNKNOWN";
+    }
+  }
+
+  /**
+   * The indexes of the reachable positions, by number of marks.
+   */
+  private static final class Layers {
+    final int[][] positions;
+    final int[] sizes;
+
+    Layers(int numCells) {
+      this.positions = new int[numCells + 1][16];
+      this.sizes = new int[numCells + 1];
+    }
+
+    void add(int marks, int index) {
+      if (this.sizes[marks] == this.positions[marks].length){
+        this.positions[marks] = java.util.Arrays.copyOf(this.positions[marks], 2 * this.sizes[marks]);
+      }
+      this.positions[marks][this.sizes[marks]] = index;
+      this.sizes[marks] += 1;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * The class <b>ThreatIndex</b> follows the open lines of one player
+ * of a TicTacToe game: the winning lines that hold none of the
+ * other player's marks, and so can still be completed.
+ *
+ * It counts the open lines by number of marks of the player, and
+ * keeps the set of the open lines missing a single mark, where the
+ * player can win in one move.  TicTacToe updates it in constant
+ * time for each open line going through the cell played or undone,
+ * so the counts and the threats are always available in constant
+ * time.
+ */
+public class ThreatIndex {
+
+  /**
+   * The number of marks in a complete line, and the number of
+   * lines (the arrays can be larger, see resize()).
+   */
+  int sizeToWin;
+  int numLines;
+
+  /**
+   * open[c] is the number of lines with c marks of the
+   * player and none of the other player.
+   */
+  int[] open;
+
+  /**
+   * The lines with sizeToWin - 1 marks of the player and none of
+   * the other player, in no particular order, and the index of
+   * each line in that list plus one (0 if it is not a threat,
+   * so that a new array needs no filling).
+   */
+  int[] threats;
+  int[] threatIndex;
+  int numThreats;
+
+  /**
+   * An index for an empty board.
+   *
+   * @param numLines the number of winning lines
+   * @param aSizeToWin the number of cells that must be aligned to win
+   */
+  ThreatIndex(int numLines, int aSizeToWin) {
+    this.sizeToWin = aSizeToWin;
+    this.numLines = numLines;
+    this.open = new int[Math.max(aSizeToWin, 0) + 1];
+    this.threats = new int[numLines];
+    this.threatIndex = new int[numLines];
+    this.open[0] = numLines;
+    addAllIfSingle();
+  }
+
+  /**
+   * A copy of another index.
+   */
+  ThreatIndex(ThreatIndex other) {
+    this.sizeToWin = other.sizeToWin;
+    this.numLines = other.numLines;
+    this.open = other.open.clone();
+    this.threats = other.threats.clone();
+    this.threatIndex = other.threatIndex.clone();
+    this.numThreats = other.numThreats;
+  }
+
+  /**
+   * Copies another index of the same size, without allocating anything.
+   */
+  void copyFrom(ThreatIndex other) {
+    System.arraycopy(other.open, 0, this.open, 0, Math.max(this.sizeToWin, 0) + 1);
+    System.arraycopy(other.threats, 0, this.threats, 0, other.numThreats);
+    System.arraycopy(other.threatIndex, 0, this.threatIndex, 0, this.numLines);
+    this.numThreats = other.numThreats;
+  }
+
+  /**
+   * Back to an empty board: every line is open and empty, and is a
+   * threat only when a single mark wins.
+   */
+  void clear() {
+    java.util.Arrays.fill(this.open, 0);
+    this.open[0] = this.numLines;
+    java.util.Arrays.fill(this.threatIndex, 0, this.numLines, 0);
+    this.numThreats = 0;
+    addAllIfSingle();
+  }
+
+  /**
+   * Changes the dimensions of the index, for a game reset to
+   * another board, keeping the arrays when they are large
+   * enough.  The index must be cleared afterwards.
+   */
+  void resize(int aNumLines, int aSizeToWin) {
+    if (this.threats.length < aNumLines){
+      this.threats = new int[aNumLines];
+      this.threatIndex = new int[aNumLines];
+    }
+    if (this.open.length < Math.max(aSizeToWin, 0) + 1){
+      this.open = new int[Math.max(aSizeToWin, 0) + 1];
+    }
+    this.numLines = aNumLines;
+    this.sizeToWin = aSizeToWin;
+  }
+
+  /**
+   * When a single mark wins, every empty line is a threat.
+   */
+  private void addAllIfSingle() {
+    if (this.sizeToWin == 1){
+      for (int line = 0; line < this.numLines; line++){
+        add(line);
+      }
+    }
+  }
+
+  /**
+   * The player puts a mark in an open line that held own of
+   * their marks.
+   */
+  void ownAdded(int line, int own) {
+    this.open[own] -= 1;
+    this.open[own + 1] += 1;
+    if (own == this.sizeToWin - 1){
+      remove(line);
+    } else if (own + 1 == this.sizeToWin - 1){
+      add(line);
+    }
+  }
+
+  /**
+   * The player's mark is taken back from an open line that
+   * held own of their marks, the mark included.
+   */
+  void ownRemoved(int line, int own) {
+    this.open[own] -= 1;
+    this.open[own - 1] += 1;
+    if (own == this.sizeToWin - 1){
+      remove(line);
+    } else if (own - 1 == this.sizeToWin - 1){
+      add(line);
+    }
+  }
+
+  /**
+   * The other player puts a first mark in a line that held
+   * own of the player's marks: the line is closed.
+   */
+  void otherAdded(int line, int own) {
+    this.open[own] -= 1;
+    if (own == this.sizeToWin - 1){
+      remove(line);
+    }
+  }
+
+  /**
+   * The other player's only mark is taken back from a line that
+   * holds own of the player's marks: the line is open again.
+   */
+  void otherRemoved(int line, int own) {
+    this.open[own] += 1;
+    if (own == this.sizeToWin - 1){
+      add(line);
+    }
+  }
+
+  private void add(int line) {
+    this.threats[this.numThreats] = line;
+    this.numThreats += 1;
+    this.threatIndex[line] = this.numThreats;
+  }
+
+  /**
+   * Removes a line by moving the last threat in its place.
+   */
+  private void remove(int line) {
+    int index = this.threatIndex[line] - 1;
+    this.numThreats -= 1;
+    int last = this.threats[this.numThreats];
+    this.threats[index] = last;
+    this.threatIndex[last] = index + 1;
+    this.threatIndex[line] = 0;
+  }
+}
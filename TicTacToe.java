@@ -7,7 +7,7 @@
  *
  * Originally written by Guy-Vincent Jourdan, University of Ottawa
  */
-public class TicTacToe {
+public class TicTacToe implements GameView {
   /**
    * The internal representation of the board
    * as a one dimensional array, but visualized
@@ -27,6 +27,13 @@ public class TicTacToe {
    */
   char[] board;
 
+  /**
+   * The number of cells of the board.  The arrays of a game
+   * that was reset to a smaller board keep their size, so
+   * board.length can be larger.
+   */
+  int numCells;
+
   /**
    * The number of rows in your grid.
    */
@@ -59,6 +66,73 @@ public class TicTacToe {
    */
   CellValue currentPlayer;
 
+  /**
+   * The same board seen as one bitset per player:
+   * cell i (0-based) is bit (i % 64) of word (i / 64).
+   */
+  long[] xBits;
+  long[] oBits;
+
+  /**
+   * The winning lines of a board of this size.
+   */
+  BoardLayout layout;
+
+  /**
+   * How many Xs and how many Os are in each winning line,
+   * updated at each play.  A line is complete when its
+   * count reaches sizeToWin.
+   */
+  int[] xLineCounts;
+  int[] oLineCounts;
+
+  /**
+   * The open lines of each player, by number of marks,
+   * and the lines each player can complete in one move.
+   */
+  ThreatIndex xThreats;
+  ThreatIndex oThreats;
+
+  /**
+   * The positions played so far, in order, used to undo
+   * and redo moves.  The first numMoves entries have been
+   * played; the entries up to numRedo can be redone.
+   */
+  int[] moves;
+  int numMoves;
+  int numRedo;
+
+  /**
+   * The empty cells (0-based), in no particular order: the first
+   * numFree entries of freeCells, with the index of each cell in
+   * freeCells in freeIndex.  A cell played is replaced by the last
+   * empty cell and keeps, in freeIndex, the index it had, so that
+   * undoing the moves in reverse order puts every cell back where
+   * it was.
+   */
+  int[] freeCells;
+  int[] freeIndex;
+  int numFree;
+
+  /**
+   * The round at which the winner was declared, or 0
+   * if there is no winner yet.
+   */
+  int winRound;
+
+  /**
+   * The Zobrist hash of the board, kept up to date
+   * at each play and undo.
+   */
+  long hash;
+
+  /**
+   * The Zobrist hash of the board seen through each symmetry
+   * of the layout (entry 0 is the board itself, the same as
+   * hash), kept up to date at each play and undo.
+   */
+  long[] symmetryHashes;
+
 
   /**
    * The default empty constructor.  The default game
@@ -66,18 +140,7 @@ public class TicTacToe {
    */
   public TicTacToe() {
     //Values based on traditional Tic Tac Toe board
-    this.board = new char[9];
-    this.numColumns = 3;
-    this.numRows = 3;
-    this.numRounds = 0;
-    this.sizeToWin = 3;
-    this.gameState = GameState.PLAYING;
-    this.currentPlayer = CellValue.EMPTY;
-
-    //Makes the board empty
-    for (int i = 0; i < 9; i++){
-      this.board[i] = ' ';
-    }
+    this(3, 3, 3);
   }
 
   /**
@@ -90,18 +153,183 @@ public class TicTacToe {
    */
   public TicTacToe(int aNumRows, int aNumColumns, int aSizeToWin) {
     this.board = new char[(aNumColumns * aNumRows)];
+    this.numCells = aNumColumns * aNumRows;
     this.numColumns = aNumColumns;
     this.numRows = aNumRows;
     this.numRounds = 0;
     this.sizeToWin = aSizeToWin;
     this.gameState = GameState.PLAYING;
     this.currentPlayer = CellValue.EMPTY;
+    this.layout = BoardLayout.forConfig(aNumRows, aNumColumns, aSizeToWin);
+    this.xBits = new long[this.layout.numWords];
+    this.oBits = new long[this.layout.numWords];
+    this.xLineCounts = new int[this.layout.numLines];
+    this.oLineCounts = new int[this.layout.numLines];
+    this.xThreats = new ThreatIndex(this.layout.numLines, aSizeToWin);
+    this.oThreats = new ThreatIndex(this.layout.numLines, aSizeToWin);
+    this.moves = new int[aNumColumns * aNumRows];
+    this.freeCells = new int[aNumColumns * aNumRows];
+    this.freeIndex = new int[aNumColumns * aNumRows];
+    this.symmetryHashes = new long[this.layout.numSymmetries];
 
     //Makes the board empty
-    for (int i = 0; i < (aNumColumns * aNumRows); i++){
-      this.board[i] = ' ';
+    java.util.Arrays.fill(this.board, ' ');
+    freeAll();
+
+  }
+
+  /**
+   * A copy constructor.  The new game has the same board,
+   * state and moves history as the provided one, but does
+   * not share anything that can be modified with it.
+   *
+   * @param other the game to copy
+   */
+  public TicTacToe(TicTacToe other) {
+    this.board = other.board.clone();
+    this.numCells = other.numCells;
+    this.numColumns = other.numColumns;
+    this.numRows = other.numRows;
+    this.numRounds = other.numRounds;
+    this.sizeToWin = other.sizeToWin;
+    this.gameState = other.gameState;
+    this.currentPlayer = other.currentPlayer;
+    this.layout = other.layout;
+    this.xBits = other.xBits.clone();
+    this.oBits = other.oBits.clone();
+    this.xLineCounts = other.xLineCounts.clone();
+    this.oLineCounts = other.oLineCounts.clone();
+    this.xThreats = new ThreatIndex(other.xThreats);
+    this.oThreats = new ThreatIndex(other.oThreats);
+    this.moves = other.moves.clone();
+    this.freeCells = other.freeCells.clone();
+    this.freeIndex = other.freeIndex.clone();
+    this.numFree = other.numFree;
+    this.numMoves = other.numMoves;
+    this.numRedo = other.numRedo;
+    this.winRound = other.winRound;
+    this.hash = other.hash;
+    this.symmetryHashes = other.symmetryHashes.clone();
+  }
+
+  /**
+   * Empties the board and forgets the moves played,
+   * keeping the dimensions of the game.
+   */
+  void clearBoard() {
+    BoardLayout l = this.layout;
+    java.util.Arrays.fill(this.board, 0, this.numCells, ' ');
+    java.util.Arrays.fill(this.xBits, 0, l.numWords, 0L);
+    java.util.Arrays.fill(this.oBits, 0, l.numWords, 0L);
+    java.util.Arrays.fill(this.xLineCounts, 0, l.numLines, 0);
+    java.util.Arrays.fill(this.oLineCounts, 0, l.numLines, 0);
+    this.xThreats.clear();
+    this.oThreats.clear();
+    this.numRounds = 0;
+    this.gameState = GameState.PLAYING;
+    this.currentPlayer = CellValue.EMPTY;
+    this.numMoves = 0;
+    this.numRedo = 0;
+    this.winRound = 0;
+    this.hash = 0;
+    java.util.Arrays.fill(this.symmetryHashes, 0, l.numSymmetries, 0L);
+    freeAll();
+  }
+
+  /**
+   * Makes every cell free, in order.
+   */
+  private void freeAll() {
+    for (int cell = 0; cell < this.numCells; cell++){
+      this.freeCells[cell] = cell;
+      this.freeIndex[cell] = cell;
     }
+    this.numFree = this.numCells;
+  }
 
+  /**
+   * Starts a new game with the same dimensions, reusing the
+   * arrays of this one instead of allocating a new game.
+   */
+  public void reset() {
+    clearBoard();
+  }
+
+  /**
+   * Starts a new game with the provided dimensions, reusing the
+   * arrays of this one when they are large enough.  A game keeps
+   * the largest arrays it needed, so that a game reset over and
+   * over to boards of mixed sizes stops allocating.
+   *
+   * @param aNumRows the number of lines in the game
+   * @param aNumColumns the number of columns in the game
+   * @param aSizeToWin the number of cells that must be aligned to win.
+   */
+  public void reset(int aNumRows, int aNumColumns, int aSizeToWin) {
+    if (aNumRows != this.numRows || aNumColumns != this.numColumns || aSizeToWin != this.sizeToWin){
+      BoardLayout l = BoardLayout.forConfig(aNumRows, aNumColumns, aSizeToWin);
+      int cells = aNumRows * aNumColumns;
+      if (this.board.length < cells){
+        this.board = new char[cells];
+        this.moves = new int[cells];
+        this.freeCells = new int[cells];
+        this.freeIndex = new int[cells];
+      }
+      if (this.xBits.length < l.numWords){
+        this.xBits = new long[l.numWords];
+        this.oBits = new long[l.numWords];
+      }
+      if (this.xLineCounts.length < l.numLines){
+        this.xLineCounts = new int[l.numLines];
+        this.oLineCounts = new int[l.numLines];
+      }
+      if (this.symmetryHashes.length < l.numSymmetries){
+        this.symmetryHashes = new long[l.numSymmetries];
+      }
+      this.xThreats.resize(l.numLines, aSizeToWin);
+      this.oThreats.resize(l.numLines, aSizeToWin);
+      this.layout = l;
+      this.numCells = cells;
+      this.numRows = aNumRows;
+      this.numColumns = aNumColumns;
+      this.sizeToWin = aSizeToWin;
+    }
+    clearBoard();
+  }
+
+  /**
+   * Copies the board, state and moves history of another
+   * game into this one, without allocating anything.  Both
+   * games must have the same dimensions.
+   *
+   * @param other the game to copy
+   */
+  public void copyFrom(TicTacToe other) {
+    if (other.layout != this.layout && (other.numRows != this.numRows
+        || other.numColumns != this.numColumns || other.sizeToWin != this.sizeToWin)){
+      throw new IllegalArgumentException("Can not copy a " + other.numRows + "x" + other.numColumns
+        + " game into a " + this.numRows + "x" + this.numColumns + " game");
+    }
+    BoardLayout l = this.layout;
+    System.arraycopy(other.board, 0, this.board, 0, this.numCells);
+    System.arraycopy(other.xBits, 0, this.xBits, 0, l.numWords);
+    System.arraycopy(other.oBits, 0, this.oBits, 0, l.numWords);
+    System.arraycopy(other.xLineCounts, 0, this.xLineCounts, 0, l.numLines);
+    System.arraycopy(other.oLineCounts, 0, this.oLineCounts, 0, l.numLines);
+    this.xThreats.copyFrom(other.xThreats);
+    this.oThreats.copyFrom(other.oThreats);
+    System.arraycopy(other.moves, 0, this.moves, 0, other.numRedo);
+    System.arraycopy(other.freeCells, 0, this.freeCells, 0, this.numCells);
+    System.arraycopy(other.freeIndex, 0, this.freeIndex, 0, this.numCells);
+    this.numFree = other.numFree;
+    this.numRounds = other.numRounds;
+    this.gameState = other.gameState;
+    this.currentPlayer = other.currentPlayer;
+    this.numMoves = other.numMoves;
+    this.numRedo = other.numRedo;
+    this.winRound = other.winRound;
+    this.hash = other.hash;
+    System.arraycopy(other.symmetryHashes, 0, this.symmetryHashes, 0, l.numSymmetries);
   }
 
   /**
@@ -128,6 +356,104 @@ public class TicTacToe {
     }
   }
 
+  public int numRows() {
+    return this.numRows;
+  }
+
+  public int numColumns() {
+    return this.numColumns;
+  }
+
+  public int sizeToWin() {
+    return this.sizeToWin;
+  }
+
+  public int numRounds() {
+    return this.numRounds;
+  }
+
+  public GameState gameState() {
+    return this.gameState;
+  }
+
+  /**
+   * The Zobrist hash of the board, kept up to date at each move.
+   */
+  public long hash() {
+    return this.hash;
+  }
+
+  /**
+   * A copy of this game, with its moves history.
+   *
+   * @return a new TicTacToe
+   */
+  public TicTacToe toTicTacToe() {
+    return new TicTacToe(this);
+  }
+
+  /**
+   * A read-only view of this game, such as the game a Player is
+   * given: it follows the moves played in the game, but can not be
+   * cast back to it, so it can only be changed through a copy.
+   *
+   * @return a view of this game
+   */
+  public GameView readOnlyView() {
+    return new ReadOnlyView(this);
+  }
+
+  /**
+   * The view returned by readOnlyView(), which only reads the game.
+   */
+  private static final class ReadOnlyView implements GameView {
+    private final TicTacToe game;
+
+    ReadOnlyView(TicTacToe game) {
+      this.game = game;
+    }
+
+    public int numRows() {
+      return this.game.numRows;
+    }
+
+    public int numColumns() {
+      return this.game.numColumns;
+    }
+
+    public int sizeToWin() {
+      return this.game.sizeToWin;
+    }
+
+    public int numRounds() {
+      return this.game.numRounds;
+    }
+
+    public GameState gameState() {
+      return this.game.gameState;
+    }
+
+    public CellValue nextPlayer() {
+      return this.game.nextPlayer();
+    }
+
+    public CellValue valueAt(int position) {
+      return this.game.valueAt(position);
+    }
+
+    public CellValue valueAt(int row, int column) {
+      return this.game.valueAt(row, column);
+    }
+
+    public long hash() {
+      return this.game.hash;
+    }
+
+    public TicTacToe toTicTacToe() {
+      return new TicTacToe(this.game);
+    }
+  }
+
   /**
    * What is the value at the provided cell based on the
    * grid of numRows x numColumns as illustrated below.
@@ -149,18 +475,10 @@ public class TicTacToe {
     //converts 'play position' to 'array position'
     position = position -1;
 
-    if (position < 0 || position > ((this.board.length) - 1)){
+    if (position < 0 || position > ((this.numCells) - 1)){
        return CellValue.INVALID;
      }
-     if (this.board[position] == 'X'){
-       return CellValue.X;
-     }
-     if (this.board[position] == 'O'){
-       return CellValue.O;
-     }
-     else {
-       return CellValue.EMPTY;
-     }
+     return cellAt(position);
   }
 
   /**
@@ -184,19 +502,28 @@ public class TicTacToe {
     //2D position position converted to 1D position, valid for all sizes of arrays
     int position = (((row - 1) * this.numColumns) + column) - 1;
 
-    if (position < 0 || position > ((this.board.length) - 1)){
+    if (position < 0 || position > ((this.numCells) - 1)){
        return CellValue.INVALID;
     }
-    if (this.board[position] == 'X'){
-       return CellValue.X;
-     }
-    if (this.board[position] == 'O'){
-       return CellValue.O;
+    return cellAt(position);
+
+  }
+
+  /**
+   * Reads a cell from the bitboards.
+   *
+   * @param cell The 0-based cell, which must be on the board
+   * @return X, O or EMPTY
+   */
+  private CellValue cellAt(int cell) {
+    long bit = 1L << cell;
+    if ((this.xBits[cell >>> 6] & bit) != 0){
+      return CellValue.X;
     }
-    else {
-       return CellValue.EMPTY;
+    if ((this.oBits[cell >>> 6] & bit) != 0){
+      return CellValue.O;
     }
-
+    return CellValue.EMPTY;
   }
 
   /**
@@ -223,10 +550,11 @@ public class TicTacToe {
     if (this.gameState == GameState.DRAW){
       view[1] = "Result: DRAW";
     }
-    if (nextPlayer() == CellValue.X){
+    CellValue next = nextPlayer();
+    if (next == CellValue.X){
       view[1] = "X to play: ";
     }
-    if (nextPlayer()  == CellValue.O) {
+    if (next == CellValue.O) {
       view[1] = "O to play: ";
     }
     
@@ -265,286 +593,545 @@ public class TicTacToe {
    * @return A message about the current play (see tests for details)
    */
   public String play(int position) {
-    String message = "";
+    return tryPlay(position).message(position, this.numCells);
+  }
+
+  /**
+   * Plays a position, as play() does, but returns the outcome as
+   * a constant instead of a message, so that programs that only
+   * need the outcome do not build any text.  The cell is looked up
+   * once and nothing is allocated.
+   *
+   * @param position The position that has been selected by the next player.
+   * @return ACCEPTED, XWIN, OWIN or DRAW if the move was played (the
+   *         last three when it ended the game), OFF_BOARD, OCCUPIED_X
+   *         or OCCUPIED_O if it was rejected
+   */
+  public PlayResult tryPlay(int position) {
+    if (!GameMetrics.ENABLED){
+      return playMove(position);
+    }
+    long start = System.nanoTime();
+    PlayResult result = playMove(position);
+    GameMetrics.recordPlay(System.nanoTime() - start);
+    return result;
+  }
+
+  /**
+   * The work of tryPlay(), without the metrics.
+   */
+  private PlayResult playMove(int position) {
+    int cell = position - 1;
     //Following section for invalid positions.
-    if(valueAt(position) == CellValue.INVALID){
-      message = "The value should be between 1 and " + this.board.length;
-      return message;
+    if (cell < 0 || cell >= this.numCells){
+      if (GameMetrics.ENABLED){
+        GameMetrics.recordRejection(GameMetrics.OFF_BOARD);
+      }
+      return PlayResult.OFF_BOARD;
     }
-    else if(valueAt(position) == CellValue.X){
-      message = "Cell " + position + " has already been played with X";
-      return message;
+    char value = this.board[cell];
+    if (value == 'X'){
+      if (GameMetrics.ENABLED){
+        GameMetrics.recordRejection(GameMetrics.OCCUPIED_BY_X);
+      }
+      return PlayResult.OCCUPIED_X;
     }
-    else if(valueAt(position) == CellValue.O){
-      message = "Cell " + position + " has already been played with O";
-      return message;
+    if (value == 'O'){
+      if (GameMetrics.ENABLED){
+        GameMetrics.recordRejection(GameMetrics.OCCUPIED_BY_O);
+      }
+      return PlayResult.OCCUPIED_O;
     }
     //Following section for valid positions.
-    else{
-      //Following section executes if x plays.
-      if (nextPlayer() == CellValue.X) {
-        
-        //Adds their play to the board array and increments the round counter.
-        this.board[position - 1] = 'X';
-        this.numRounds+= 1;
-
-        //if win occurs, doesnt change game state.
-        if(this.gameState == GameState.OWIN || this.gameState == GameState.XWIN){
-          this.currentPlayer = nextPlayer();
-          return null;
-        }
-        
-        //following if statements check if there is a winner or not, then update game state, change current player and prompts user regarding game state.
-        if(checkForWinner(position) == GameState.XWIN){
-          this.gameState = GameState.XWIN;
-          this.currentPlayer = nextPlayer();
-          message = "Result: XWIN";
-          return message;
-        }
-        if(checkForWinner(position) == GameState.PLAYING){
-          this.gameState = GameState.PLAYING;
-          this.currentPlayer = nextPlayer();
-          return null;
-        }
-        if(checkForWinner(position) == GameState.DRAW){
-          this.gameState = GameState.DRAW;
-          this.currentPlayer = nextPlayer();
-          message = "Result: DRAW";
-          return message;
-        }
-      }
-      
-      //Following section executes if o plays.
-      if (nextPlayer() == CellValue.O) {
-        //Adds their play to the board array and increments the round counter.
-        this.board[position - 1] = 'O';
-        this.numRounds+= 1;
-        
-        //If there is already a winner, doesnt change game state
-        if(this.gameState == GameState.XWIN || this.gameState == GameState.OWIN){
-          this.currentPlayer = nextPlayer();
-          return null;
-        }
+    GameState before = this.gameState;
+    makeMove(position);
 
-        //following if statements check if there is a winner or not, then update game state, change current player and prompts user regarding game state.
-        if(checkForWinner(position) == GameState.OWIN){
-          this.gameState = GameState.OWIN;
-          this.currentPlayer = nextPlayer();
-          message = "Result: OWIN";
-          return message;
-        }
-        if(checkForWinner(position) == GameState.PLAYING){
-          this.gameState = GameState.PLAYING;
-          this.currentPlayer = nextPlayer();
-          return null;
-        }
-        if(checkForWinner(position) == GameState.DRAW){
-          this.gameState = GameState.DRAW;
-          this.currentPlayer = nextPlayer();
-          message = "Result: DRAW";
-          return message;
-        }
-      }
-      
-    }
+    //a new play replaces the moves that could have been redone.
+    this.numRedo = this.numMoves;
 
-    return null;
-   
+    //the game only ends with this move if nobody had won before; afterwards, moves are recorded without changing the state.
+    if (before != GameState.PLAYING){
+      return PlayResult.ACCEPTED;
+    }
+    switch (this.gameState){
+      case XWIN: return PlayResult.XWIN;
+      case OWIN: return PlayResult.OWIN;
+      case DRAW: return PlayResult.DRAW;
+      default: return PlayResult.ACCEPTED;
+    }
   }
 
   /**
-   * A help method to determine if the game has been won
-   * to be called after a player has played
+   * Takes back the last move that was played.  The board,
+   * the number of rounds, the current player and the state
+   * of the game are restored as they were before that move,
+   * and the move can be played again with redo().
    *
-   * This method is called after the board has been updated
-   * and provides the last position that was played
-   * (to help you analyze the board).
-   *
-   * @param position The middle position to start our check
-   * @return GameState to show if XWIN or OWIN.  If the result was a DRAW, or if
-   *         the game is still being played.
+   * @return false if there was no move to undo
    */
-  private GameState checkForWinner(int position) {
-    //The following booleans are used to ensure that the next cell, in the direction being checked, is to be counted towards a potential win.
-    //the following are used to check for a horizontal -
-    boolean horizontalRight = true;
-    boolean horizontaLeft = true;
-    //the following are used to check for a forward diagonal: /
-    boolean upRight = true;
-    boolean downLeft = true;
-    //the following are used to check for a backward diagonal: \
-    boolean upLeft = true;
-    boolean downRight = true;
-    //the following are used to check for a vertical |
-    boolean up = true;
-    boolean down = true;
-    //the position's row is precalculated and will be used to compare to subsequent values in the array.
-    int row = (position - 1) / this.numColumns;
-    //The counter is used to count how many Xs or Os are in a row, the counter starts at 1 because we are checking after a play.
-    int counter = 1;
-    //an increment value is used for checking the different cases eg: vertical, forward diagonal, etc.
-    int increment = 0;
-    //check is the cell value to compared to based on the player, the state is who wins based on who played. 
-    CellValue check = CellValue.EMPTY;
-    GameState state = GameState.PLAYING;
-
-  
-    if(nextPlayer() == CellValue.X){
-      check = CellValue.X;
-      state = GameState.XWIN;
+  public boolean undo() {
+    if (this.numMoves == 0){
+      return false;
     }
+    this.numMoves -= 1;
+    CellValue player = this.currentPlayer;
+    clearCell(this.moves[this.numMoves] - 1, player);
+    this.numRounds -= 1;
 
-    if(nextPlayer() == CellValue.O){
-      check = CellValue.O;
-      state = GameState.OWIN;
+    //the winner is forgotten only when the winning move itself is undone; a full board is no longer a draw.
+    if (this.winRound > this.numRounds){
+      this.winRound = 0;
+      this.gameState = GameState.PLAYING;
+    } else if (this.gameState == GameState.DRAW){
+      this.gameState = GameState.PLAYING;
     }
 
+    //X always plays first, so the player before the undone one is the other player, unless no one has played yet.
+    if (this.numRounds == 0){
+      this.currentPlayer = CellValue.EMPTY;
+    } else if (player == CellValue.X){
+      this.currentPlayer = CellValue.O;
+    } else {
+      this.currentPlayer = CellValue.X;
+    }
+    return true;
+  }
 
-    
-    //Check Horizontal
-    //iterates from 1 till size of win. Checks both directions simultaneously. 
-    //if a cell is not in the same row or does not have desired value, the boolean in that direction is set to false and the program stops checking in that direction.
-    for(int i = 1; i < this.sizeToWin; i++){
-      //The following 2 if statements detect if the cell value in the next horizontal position (both directions) is invalid
-      if (valueAt(position + i) != check || (((position - 1) + i) / this.numColumns) != row){
-        horizontalRight = false;
-      }
-      if (valueAt(position - i) != check || (((position - 1) - i) / this.numColumns) != row){
-        horizontaLeft = false;
-      }
-      
-      //the following 2 if statements will increment the counter if the next cell value is valid (both directions) 
-      //if the counter reaches the size to win it will return which player won.
-      if(valueAt(position + i) == check && horizontalRight == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
-      }
-      if(valueAt(position - i) == check && horizontaLeft == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
-      }
-      
+  /**
+   * Plays again the last move that was taken back by undo().
+   *
+   * @return false if there was no move to redo
+   */
+  public boolean redo() {
+    if (this.numMoves == this.numRedo){
+      return false;
     }
+    makeMove(this.moves[this.numMoves]);
+    return true;
+  }
 
-    //Check Vertical
-    //iterates from 1 till size of win. Checks both directions simultaneously. 
-    //if a cell does not have desired value, the boolean in that direction is set to false and the program stops checking in that direction.
-    increment = 0;
-    counter = 1;
-    for(int i = 1; i < this.sizeToWin; i++){
-      //The increment is set to the number of columns to ensure that the program checks in the same column.
-      increment = i * this.numColumns;
+  /**
+   * Plays a position that is known to be on the board and empty:
+   * updates the board, the state of the game and the current
+   * player, and records the move so that it can be undone.
+   *
+   * @param position The 1-based position played by the next player
+   */
+  void makeMove(int position) {
+    CellValue player = nextPlayer();
 
-      //The following 2 if statements detect if the cell value in the next vertical position (both directions) is invalid
-      if (valueAt(position + increment) != check){
-        down = false;
-      }
-      if (valueAt(position - increment) != check ){
-        up = false;
+    //Adds their play to the board and increments the round counter.
+    setCell(position - 1, player);
+    this.numRounds+= 1;
+    this.moves[this.numMoves] = position;
+    this.numMoves += 1;
+
+    //the winner is checked only while nobody has won, since the winner of the game is the player who won first.
+    if(this.gameState == GameState.PLAYING){
+      this.gameState = checkForWinner(position);
+      if(this.gameState == GameState.XWIN || this.gameState == GameState.OWIN){
+        this.winRound = this.numRounds;
       }
+    }
+    this.currentPlayer = player;
+  }
 
-      //the following 2 if statements will increment the counter if the next cell value is valid (both directions) 
-      //if the counter reaches the size to win it will return which player won.
-      if(valueAt(position + increment) == check && down == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
+  /**
+   * Puts the player's mark in a cell, and adds it
+   * to the counters of the lines going through it.
+   *
+   * @param cell The 0-based cell, which must be empty
+   * @param player X or O
+   */
+  void setCell(int cell, CellValue player) {
+    BoardLayout lines = this.layout;
+    int[] counts = this.xLineCounts;
+    int[] otherCounts = this.oLineCounts;
+    ThreatIndex threats = this.xThreats;
+    ThreatIndex otherThreats = this.oThreats;
+    if (player == CellValue.X){
+      this.board[cell] = 'X';
+      this.xBits[cell >>> 6] |= 1L << cell;
+      this.hash ^= lines.xKeys[cell];
+    } else {
+      this.board[cell] = 'O';
+      this.oBits[cell >>> 6] |= 1L << cell;
+      this.hash ^= lines.oKeys[cell];
+      counts = this.oLineCounts;
+      otherCounts = this.xLineCounts;
+      threats = this.oThreats;
+      otherThreats = this.xThreats;
+    }
+    for (int i = lines.cellLineStart[cell]; i < lines.cellLineStart[cell + 1]; i++){
+      int line = lines.cellLines[i];
+      int own = counts[line];
+      int other = otherCounts[line];
+      //only lines without the other player's marks are open for the player, and the other way around.
+      if (other == 0){
+        threats.ownAdded(line, own);
       }
-      if(valueAt(position - increment) == check && up == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
+      if (own == 0){
+        otherThreats.otherAdded(line, other);
       }
+      counts[line] = own + 1;
     }
+    toggleSymmetryHashes(cell, player);
+    takeFreeCell(cell);
+  }
 
-    //Check forward diagonal
-    //iterates from 1 till size of win. Checks both directions simultaneously. 
-    //if a cell does not have desired value or is not in the same diagonal, the boolean in that direction is set to false and the program stops checking in that direction.
-    increment = 0;
-    counter = 1;
-    for(int i = 1; i < this.sizeToWin; i++){
-      //the increment is set to num of columns - 1 to traverse the board in a forward diagonal
-      increment = i * (this.numColumns - 1);
+  /**
+   * Removes a cell from the free cells: it swaps places with the
+   * last free cell, and remembers its index for giveBackFreeCell().
+   */
+  private void takeFreeCell(int cell) {
+    int index = this.freeIndex[cell];
+    this.numFree -= 1;
+    int last = this.freeCells[this.numFree];
+    this.freeCells[index] = last;
+    this.freeIndex[last] = index;
+    this.freeCells[this.numFree] = cell;
+  }
 
-      //The following 2 if statements detect if the cell value in the next forward diagonal position (both directions) is invalid or if it is not in the same diagonal
-      if (valueAt(position + increment) != check || ((position - 1 + increment - (this.numColumns - 1)) / this.numColumns) == ((position - 1 + increment) / this.numColumns)){
-        downLeft = false;
-      }
-      if (valueAt(position - increment) != check || ((position - 1 - increment + (this.numColumns - 1)) / this.numColumns) == ((position - 1 - increment) / this.numColumns)){
-        upRight = false;
-      }
+  /**
+   * Puts back the last cell removed from the free cells where it
+   * was: the free cell that took its place goes back to the end
+   * of the list, as in reverse of takeFreeCell().
+   */
+  private void giveBackFreeCell(int cell) {
+    int index = this.freeIndex[cell];
+    int moved = this.freeCells[index];
+    this.freeCells[this.numFree] = moved;
+    this.freeIndex[moved] = this.numFree;
+    this.freeCells[index] = cell;
+    this.freeIndex[cell] = index;
+    this.numFree += 1;
+  }
 
-      //the following 2 if statements will increment the counter if the next cell value is valid (both directions) 
-      //if the counter reaches the size to win it will return which player won.
-      if(valueAt(position + increment) == check && downLeft == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
+  /**
+   * Removes the player's mark from a cell, and from
+   * the counters of the lines going through it.
+   *
+   * @param cell The 0-based cell, which must hold the player's mark
+   * @param player X or O
+   */
+  private void clearCell(int cell, CellValue player) {
+    BoardLayout lines = this.layout;
+    int[] counts = this.xLineCounts;
+    int[] otherCounts = this.oLineCounts;
+    ThreatIndex threats = this.xThreats;
+    ThreatIndex otherThreats = this.oThreats;
+    this.board[cell] = ' ';
+    if (player == CellValue.X){
+      this.xBits[cell >>> 6] &= ~(1L << cell);
+      this.hash ^= lines.xKeys[cell];
+    } else {
+      this.oBits[cell >>> 6] &= ~(1L << cell);
+      this.hash ^= lines.oKeys[cell];
+      counts = this.oLineCounts;
+      otherCounts = this.xLineCounts;
+      threats = this.oThreats;
+      otherThreats = this.xThreats;
+    }
+    for (int i = lines.cellLineStart[cell]; i < lines.cellLineStart[cell + 1]; i++){
+      int line = lines.cellLines[i];
+      int own = counts[line];
+      int other = otherCounts[line];
+      if (other == 0){
+        threats.ownRemoved(line, own);
       }
-      if(valueAt(position - increment) == check && upRight == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
+      if (own == 1){
+        otherThreats.otherRemoved(line, other);
       }
-      
+      counts[line] = own - 1;
     }
+    toggleSymmetryHashes(cell, player);
+    giveBackFreeCell(cell);
+  }
 
-    //Check backward diagonal
-    //iterates from 1 till size of win. Checks both directions simultaneously. 
-    //if a cell does not have desired value or is not in the same diagonal, the boolean in that direction is set to false and the program stops checking in that direction.
-    increment = 0;
-    counter = 1;
-    for(int i = 1; i < this.sizeToWin; i++){
-      //the increment is set to num of columns - 1 to traverse the board in a forward diagonal
-      increment = i * (this.numColumns+1);
+  /**
+   * Plays a cell for the next player, updating only what a random
+   * playout needs: the board, the line counters, the free cells,
+   * the number of rounds, the current player and the state of the
+   * game.  The hashes, the threat indexes and the moves to undo are
+   * left as they were, so the cells played this way must be taken
+   * back with unplayFast(), in reverse order, before the game is
+   * used in any other way.
+   *
+   * @param cell The 0-based cell, which must be empty, in a game still being played
+   */
+  void playFast(int cell) {
+    CellValue player = nextPlayer();
+    int[] counts = this.xLineCounts;
+    GameState won = GameState.XWIN;
+    if (player == CellValue.X){
+      this.board[cell] = 'X';
+      this.xBits[cell >>> 6] |= 1L << cell;
+    } else {
+      this.board[cell] = 'O';
+      this.oBits[cell >>> 6] |= 1L << cell;
+      counts = this.oLineCounts;
+      won = GameState.OWIN;
+    }
+    BoardLayout lines = this.layout;
+    boolean complete = false;
+    for (int i = lines.cellLineStart[cell]; i < lines.cellLineStart[cell + 1]; i++){
+      int line = lines.cellLines[i];
+      counts[line] += 1;
+      complete |= counts[line] == this.sizeToWin;
+    }
+    takeFreeCell(cell);
+    this.numRounds += 1;
+    this.currentPlayer = player;
+    if (complete){
+      this.gameState = won;
+      this.winRound = this.numRounds;
+    } else if (this.numRounds == this.numCells){
+      this.gameState = GameState.DRAW;
+    }
+  }
 
-      //The following 2 if statements detect if the cell value in the next backward diagonal position (both directions) is invalid or if it is not in the same diagonal
-      if (valueAt(position + increment) != check || ((position - 1 + increment - (this.numColumns + 1)) / this.numColumns) == ((position - 1 + increment) / this.numColumns)){
-        downRight = false;
-      }
-      if (valueAt(position - increment) != check || ((position - 1 - increment + (this.numColumns + 1)) / this.numColumns) == ((position - 1 - increment) / this.numColumns)){
-        upLeft = false;
-      }
+  /**
+   * Takes back the last cell played with playFast().  The game
+   * was being played before that cell, whatever its state now.
+   *
+   * @param cell The 0-based cell, the last one played with playFast()
+   */
+  void unplayFast(int cell) {
+    CellValue player = this.currentPlayer;
+    int[] counts = this.xLineCounts;
+    this.board[cell] = ' ';
+    if (player == CellValue.X){
+      this.xBits[cell >>> 6] &= ~(1L << cell);
+    } else {
+      this.oBits[cell >>> 6] &= ~(1L << cell);
+      counts = this.oLineCounts;
+    }
+    BoardLayout lines = this.layout;
+    for (int i = lines.cellLineStart[cell]; i < lines.cellLineStart[cell + 1]; i++){
+      counts[lines.cellLines[i]] -= 1;
+    }
+    giveBackFreeCell(cell);
+    this.numRounds -= 1;
+    if (this.numRounds == 0){
+      this.currentPlayer = CellValue.EMPTY;
+    } else {
+      this.currentPlayer = player == CellValue.X ? CellValue.O : CellValue.X;
+    }
+    this.gameState = GameState.PLAYING;
+    this.winRound = 0;
+  }
 
-      //the following 2 if statements will increment the counter if the next cell value is valid (both directions) 
-      //if the counter reaches the size to win it will return which player won.
-      if(valueAt(position + increment) == check && downRight == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
-      }
-      if(valueAt(position - increment) == check && upLeft == true){
-        counter += 1;
-        if (counter == this.sizeToWin){
-          return state;
-        }
+  /**
+   * Adds or removes the player's mark in a cell from the hash
+   * of every symmetric board: the mark is in the image of the
+   * cell through each symmetry.
+   */
+  private void toggleSymmetryHashes(int cell, CellValue player) {
+    BoardLayout lines = this.layout;
+    long[] keys = player == CellValue.X ? lines.xKeys : lines.oKeys;
+    int row = cell / this.numColumns;
+    int column = cell - row * this.numColumns;
+    long[] hashes = this.symmetryHashes;
+    for (int s = 0; s < lines.numSymmetries; s++){
+      hashes[s] ^= keys[lines.symmetricCell(s, row, column)];
+    }
+  }
+
+  /**
+   * The number of empty cells, the moves that can be played.
+   */
+  public int numFreeCells() {
+    return this.numFree;
+  }
+
+  /**
+   * One of the empty cells, in no particular order, so that the
+   * moves that can be played are listed without allocating:
+   *
+   *   for (int i = 0; i < game.numFreeCells(); i++){
+   *     int position = game.freePosition(i);
+   *   }
+   *
+   * The order changes when a move is played, and is restored when
+   * it is undone.
+   *
+   * @param index from 0 to numFreeCells() - 1
+   * @return the 1-based position of the empty cell
+   */
+  public int freePosition(int index) {
+    return this.freeCells[index] + 1;
+  }
+
+  /**
+   * An empty cell picked uniformly at random, in constant time.
+   *
+   * @param random the source of randomness
+   * @return the 1-based position of the empty cell, or 0 if the board is full
+   */
+  public int randomFreePosition(java.util.SplittableRandom random) {
+    if (this.numFree == 0){
+      return 0;
+    }
+    return this.freeCells[random.nextInt(this.numFree)] + 1;
+  }
+
+  /**
+   * How many winning lines hold exactly count marks of the
+   * player and none of the other player.
+   *
+   * @param player X or O
+   * @param count the number of marks, from 0 to sizeToWin
+   * @return the number of such lines
+   */
+  public int openLines(CellValue player, int count) {
+    ThreatIndex threats = player == CellValue.X ? this.xThreats : this.oThreats;
+    if (count < 0 || count > Math.max(threats.sizeToWin, 0)){
+      return 0;
+    }
+    return threats.open[count];
+  }
+
+  /**
+   * How many winning lines the player can complete in one move
+   * (lines missing a single mark of the player, with none of the
+   * other player's).  Two of them may be completed by the same move.
+   *
+   * @param player X or O
+   * @return the number of such lines
+   */
+  public int numThreats(CellValue player) {
+    return player == CellValue.X ? this.xThreats.numThreats : this.oThreats.numThreats;
+  }
+
+  /**
+   * A move completing a line for the player, if there is one.
+   *
+   * @param player X or O
+   * @return a 1-based position where the player wins, or 0 if there is none
+   */
+  public int winningMove(CellValue player) {
+    ThreatIndex threats = player == CellValue.X ? this.xThreats : this.oThreats;
+    if (threats.numThreats == 0){
+      return 0;
+    }
+    //the missing mark is the one empty cell of the line.
+    BoardLayout lines = this.layout;
+    int line = threats.threats[0];
+    for (int j = lines.lineWordStart[line]; j < lines.lineWordStart[line + 1]; j++){
+      int word = lines.lineWords[j];
+      long empty = lines.lineMasks[j] & ~(this.xBits[word] | this.oBits[word]);
+      if (empty != 0){
+        return (word << 6) + Long.numberOfTrailingZeros(empty) + 1;
       }
-      
     }
+    return 0;
+  }
+
+  /**
+   * A move the player must play to stop the other player from
+   * winning on their next move, if there is one.
+   *
+   * @param player X or O, the player about to play
+   * @return a 1-based position to block, or 0 if there is nothing to block
+   */
+  public int blockingMove(CellValue player) {
+    return winningMove(player == CellValue.X ? CellValue.O : CellValue.X);
+  }
 
-    counter = 0;
-    //checks for a draw. If a cell value is empty it will keep the gamestate as playing; if the board is full and no winner has been found the game state is a draw.
-    for(int i = 0; i < this.board.length; i++){
-      if(valueAt(i+1) == CellValue.EMPTY){
-        return GameState.PLAYING;
+  /**
+   * The symmetry that turns this board into its canonical form:
+   * of all the rotations and reflections of the board, the one
+   * with the smallest hash.  Boards that are rotations or
+   * reflections of each other have the same canonical hash.
+   *
+   * @return the symmetry, to pass to toCanonical() and fromCanonical()
+   */
+  public int canonicalSymmetry() {
+    long[] hashes = this.symmetryHashes;
+    int best = 0;
+    for (int s = 1; s < this.layout.numSymmetries; s++){
+      if (hashes[s] < hashes[best]){
+        best = s;
       }
-      else{
-        counter += 1;
-        if(counter == this.board.length){
-          return GameState.DRAW;
+    }
+    return best;
+  }
+
+  /**
+   * The hash of the canonical form of the board, the same for
+   * all the rotations and reflections of the board.
+   *
+   * @return the canonical 64 bits key of the board
+   */
+  public long canonicalHash() {
+    return this.symmetryHashes[canonicalSymmetry()];
+  }
+
+  /**
+   * Where a position of this board is on its canonical form.
+   *
+   * @param position a 1-based position of this board
+   * @param symmetry the symmetry returned by canonicalSymmetry()
+   * @return the 1-based position on the canonical board
+   */
+  public int toCanonical(int position, int symmetry) {
+    return this.layout.symmetricCell(symmetry, position - 1) + 1;
+  }
+
+  /**
+   * Where a position of the canonical form is on this board, for
+   * example to play a move that was stored for the canonical board.
+   *
+   * @param position a 1-based position of the canonical board
+   * @param symmetry the symmetry returned by canonicalSymmetry()
+   * @return the 1-based position on this board
+   */
+  public int fromCanonical(int position, int symmetry) {
+    return this.layout.symmetricCell(BoardLayout.INVERSE_SYMMETRY[symmetry], position - 1) + 1;
+  }
+
+  /**
+   * A help method to determine if the game has been won
+   * to be called after a player has played
+   *
+   * This method is called after the board has been updated
+   * and provides the last position that was played
+   * (to help you analyze the board).
+   *
+   * @param position The middle position to start our check
+   * @return GameState to show if XWIN or OWIN.  If the result was a DRAW, or if
+   *         the game is still being played.
+   */
+  private GameState checkForWinner(int position) {
+    //The player who just played is still the next player, since the current player has not been updated yet.
+    int[] counts = this.xLineCounts;
+    GameState state = GameState.XWIN;
+    BoardLayout lines = this.layout;
+    int cell = position - 1;
+
+    if(nextPlayer() == CellValue.O){
+      counts = this.oLineCounts;
+      state = GameState.OWIN;
+    }
+
+    //Only the lines going through the played cell can have been completed by this play.
+    for (int i = lines.cellLineStart[cell]; i < lines.cellLineStart[cell + 1]; i++){
+      if (counts[lines.cellLines[i]] == this.sizeToWin){
+        if (GameMetrics.ENABLED){
+          GameMetrics.recordWinCheck(lines, cell, i - lines.cellLineStart[cell] + 1);
         }
+        return state;
       }
     }
-  return null;
+    if (GameMetrics.ENABLED){
+      GameMetrics.recordWinCheck(lines, cell, lines.cellLineStart[cell + 1] - lines.cellLineStart[cell]);
+    }
+
+    //Without a winner, the board is full (a draw) exactly when every cell has been played once.
+    if (this.numRounds == this.numCells){
+      return GameState.DRAW;
+    }
+    return GameState.PLAYING;
   }
       
 
@@ -562,53 +1149,192 @@ public class TicTacToe {
    * @return String representation of the game
    */
   public String toString() {
-    String slot = "";
-    int cellPosition; 
+    if (!GameMetrics.ENABLED){
+      return render();
+    }
+    long start = System.nanoTime();
+    String text = render();
+    GameMetrics.recordToString(System.nanoTime() - start);
+    return text;
+  }
+
+  /**
+   * Appends the text based representation of the grid
+   * (the same text as toString()) to the provided builder,
+   * without creating any intermediate String.
+   *
+   * @param out the builder to append to
+   * @return the same builder
+   */
+  public StringBuilder appendTo(StringBuilder out) {
+    int columns = this.numColumns;
+    if (this.numRows == 0 || columns == 0){
+      return out;
+    }
+    out.ensureCapacity(out.length() + renderedLength());
+    String separator = separator(columns);
+    for (int i = 0; i < this.numRows; i++){
+      renderRow(i, out);
+      if (i < this.numRows - 1){
+        out.append(separator);
+      }
+    }
+    return out;
+  }
 
+  /**
+   * Appends the text based representation of the grid
+   * (the same text as toString()) to the provided output,
+   * one row at a time.
+   *
+   * @param out where to append the grid
+   * @throws java.io.IOException if the output can not be written to
+   */
+  public void appendTo(Appendable out) throws java.io.IOException {
+    if (out instanceof StringBuilder){
+      appendTo((StringBuilder) out);
+      return;
+    }
+    int columns = this.numColumns;
+    if (this.numRows == 0 || columns == 0){
+      return;
+    }
+    char[] row = new char[4 * columns - 1];
+    java.nio.CharBuffer wrapped = java.nio.CharBuffer.wrap(row);
+    String separator = separator(columns);
+    for (int i = 0; i < this.numRows; i++){
+      renderRow(i, row, 0);
+      out.append(wrapped, 0, row.length);
+      if (i < this.numRows - 1){
+        out.append(separator);
+      }
+    }
+  }
+
+  /**
+   * The dashed lines between the rows (with the newlines around them),
+   * indexed by number of columns and shared by all games.
+   */
+  private static volatile String[] separators = new String[0];
+
+  /**
+   * The number of characters of the grid.  Each row is 4
+   * characters per column minus one, and is followed by a
+   * newline, a dashed line as long as the row and a newline,
+   * except for the last row.
+   */
+  private int renderedLength() {
+    if (this.numRows == 0 || this.numColumns == 0){
+      return 0;
+    }
+    int rowLength = 4 * this.numColumns - 1;
+    return this.numRows * rowLength + (this.numRows - 1) * (rowLength + 2);
+  }
+
+  /**
+   * Writes the grid in a char array sized once for the whole grid,
+   * local to the call so that games can be shown from any thread.
+   *
+   * @return the grid
+   */
+  private String render() {
+    int length = renderedLength();
+    if (length == 0){
+      return "";
+    }
+    char[] out = new char[length];
+    String separator = separator(this.numColumns);
+    int at = 0;
     for(int i = 0; i < this.numRows; i++){
-      //following statement is evalulated when at the last row (no divider)
-      if(i == this.numRows -1){
-        for (int j = 0; j < this.numColumns; j++){
-          cellPosition = ((i * this.numColumns) + j);
-          //following statement is evaluated when at the last slot in a row
-          if (j == this.numColumns - 1){
-            slot += " " + this.board[cellPosition] +" ";
-          }
-          //following statement is evaluated normally
-          else{
-            slot += " " + this.board[cellPosition] +" |";
-          }
-        }
+      at = renderRow(i, out, at);
+      //Following section adds the dashed lines between the rows (none after the last row)
+      if (i < this.numRows - 1){
+        separator.getChars(0, separator.length(), out, at);
+        at += separator.length();
       }
-      //following statement is evaulated normally
-      else{
-        for (int j = 0; j < this.numColumns; j++){
-          cellPosition = ((i * this.numColumns) + j);
-          //following statement is evaluated when at the last slot in a row
-          if (j == this.numColumns - 1){
-            slot += " " + this.board[cellPosition] +" \n" ;
-          }
-          //following statement is evaluated normally
-          else{
-            slot += " " + this.board[cellPosition] +" |";
-          }
-        }
-        //Following section adds the dashed lines between the rows
-        for (int k = 0; k < this.numColumns; k++){
-          //following statement is at the last set of dashed lines
-          if(k == this.numColumns -1){
-            slot += "---" + "\n";
-          }
-          //following statement is evaluated normally
-          else{
-            slot += "----";
-          }
-        }
+    }
+    return new String(out);
+  }
+
+  /**
+   * Writes one row of the grid, without a newline.
+   *
+   * @param row the 0-based row
+   * @param out where to write the row
+   * @param at the index of its first character in out
+   * @return the index after its last character
+   */
+  private int renderRow(int row, char[] out, int at) {
+    int columns = this.numColumns;
+    int cellPosition = row * columns;
+    for (int j = 0; j < columns; j++){
+      out[at] = ' ';
+      out[at + 1] = this.board[cellPosition];
+      out[at + 2] = ' ';
+      at += 3;
+      cellPosition += 1;
+      //following statement is evaluated normally, there is no divider after the last slot in a row
+      if (j < columns - 1){
+        out[at] = '|';
+        at += 1;
       }
     }
+    return at;
+  }
 
-    return slot;
+  /**
+   * Appends one row of the grid, without a newline, to a builder
+   * that already has the capacity for it.
+   *
+   * @param row the 0-based row
+   * @param out where to append the row
+   */
+  private void renderRow(int row, StringBuilder out) {
+    int columns = this.numColumns;
+    int cellPosition = row * columns;
+    for (int j = 0; j < columns; j++){
+      out.append(' ').append(this.board[cellPosition]).append(' ');
+      cellPosition += 1;
+      if (j < columns - 1){
+        out.append('|');
+      }
+    }
+  }
 
+  /**
+   * The dashed line between two rows of a grid with the provided
+   * number of columns, built the first time it is needed.
+   */
+  private static String separator(int columns) {
+    String[] cache = separators;
+    if (columns < cache.length && cache[columns] != null){
+      return cache[columns];
+    }
+    StringBuilder line = new StringBuilder(4 * columns + 1);
+    line.append('\n');
+    for (int k = 0; k < columns; k++){
+      //following statement is at the last set of dashed lines
+      if(k == columns -1){
+        line.append("---");
+      }
+      //following statement is evaluated normally
+      else{
+        line.append("----");
+      }
+    }
+    line.append('\n');
+    String separator = line.toString();
+    synchronized (TicTacToe.class) {
+      cache = separators;
+      if (columns >= cache.length){
+        cache = java.util.Arrays.copyOf(cache, Math.max(columns + 1, 2 * cache.length));
+      } else {
+        cache = cache.clone();
+      }
+      cache[columns] = separator;
+      separators = cache;
+    }
+    return separator;
   }
 
   /**
@@ -632,7 +1358,7 @@ public class TicTacToe {
     b.append("\n");
 
     b.append("Board (array): [");
-    for (int i=0; i<board.length; i++) {
+    for (int i=0; i<numCells; i++) {
       if (i > 0) {
         b.append(",");
       }
@@ -640,6 +1366,12 @@ public class TicTacToe {
     }
     b.append("]\n");
 
+    //the metrics are those of every game of the process.
+    if (GameMetrics.ENABLED){
+      b.append("Metrics:\n");
+      GameMetrics.appendTo(b);
+    }
+
     return b.toString();
   }
 }
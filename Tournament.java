@@ -0,0 +1,385 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The class <b>Tournament</b> plays Players against each other and
+ * rates them.  In a round-robin every player meets every other one;
+ * in a gauntlet the first player meets each of the others.  Each
+ * pairing plays the same number of games as X and as O, since X
+ * moves first.
+ *
+ * The games are shared by one thread per processor: a thread takes
+ * the next BATCH games from a shared counter, plays them with its
+ * own instance of each player (players are not thread-safe), and
+ * adds their results to the shared counts.  Players are only given
+ * a read-only view of the game, and a player that plays an occupied
+ * or off board position loses the game.  A player that throws stops
+ * the tournament: run() throws what it threw.
+ *
+ * The report gives, for each pairing and for each player against
+ * the field, the wins, draws and losses, the score, and the Elo
+ * difference it implies with a 95% confidence interval, then the
+ * number of games per second.  A bound is "-unbounded" or
+ * "+unbounded" when the interval reaches a score of 0% or 100%.
+ *
+ * Usage: java Tournament rows columns win games [--gauntlet] [--threads n] player...
+ * where games is per pairing and a player is random, alphabeta[:ms],
+ * parallel[:ms], mcts[:playouts] or tablebase.
+ */
+public class Tournament {
+
+  /**
+   * How the players are paired.
+   */
+  public enum Format { ROUND_ROBIN, GAUNTLET }
+
+  /**
+   * The number of games a thread takes at once.
+   */
+  static final int BATCH = 256;
+
+  /**
+   * The results of a pairing, from the point of view of its first player.
+   */
+  static final int WINS = 0;
+  static final int DRAWS = 1;
+  static final int LOSSES = 2;
+
+  private final int numRows;
+  private final int numColumns;
+  private final int sizeToWin;
+  private final Format format;
+  private final long gamesPerPairing;
+  private final List<String> names = new ArrayList<String>();
+  private final List<Supplier<Player>> factories = new ArrayList<Supplier<Player>>();
+
+  /**
+   * The pairings, as the indexes of their two players,
+   * and their WINS, DRAWS and LOSSES three by three.
+   */
+  private int[][] pairings;
+  private AtomicLongArray results;
+  private final AtomicLong nextGame = new AtomicLong();
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+  private long elapsedNanos;
+
+  /**
+   * A tournament on boards of the provided dimensions.
+   *
+   * @param aNumRows the number of lines in the games
+   * @param aNumColumns the number of columns in the games
+   * @param aSizeToWin the number of cells that must be aligned to win
+   * @param format ROUND_ROBIN or GAUNTLET
+   * @param gamesPerPairing the games played by each pairing, rounded up to an even number
+   */
+  public Tournament(int aNumRows, int aNumColumns, int aSizeToWin, Format format, long gamesPerPairing) {
+    this.numRows = aNumRows;
+    this.numColumns = aNumColumns;
+    this.sizeToWin = aSizeToWin;
+    this.format = format;
+    this.gamesPerPairing = (gamesPerPairing + 1) & ~1L;
+  }
+
+  public static void main(String[] args) throws java.io.IOException {
+    int rows = Integer.parseInt(args[0]);
+    int columns = Integer.parseInt(args[1]);
+    int wins = Integer.parseInt(args[2]);
+    long games = Long.parseLong(args[3]);
+    Format format = Format.ROUND_ROBIN;
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<String> specs = new ArrayList<String>();
+    for (int i = 4; i < args.length; i++){
+      if ("--gauntlet".equals(args[i])){
+        format = Format.GAUNTLET;
+      } else if ("--threads".equals(args[i])){
+        i += 1;
+        threads = Integer.parseInt(args[i]);
+      } else {
+        specs.add(args[i]);
+      }
+    }
+    if (specs.size() < 2){
+      System.out.println("At least two players are needed");
+      return;
+    }
+
+    Tournament tournament = new Tournament(rows, columns, wins, format, games);
+    for (String spec : specs){
+      tournament.add(spec, factory(spec, rows, columns, wins));
+    }
+    tournament.run(threads);
+    System.out.print(tournament.report());
+  }
+
+  /**
+   * The player described by a command line argument.
+   */
+  static Supplier<Player> factory(String spec, int rows, int columns, int wins) throws java.io.IOException {
+    String[] parts = spec.split(":");
+    long value = parts.length > 1 ? Long.parseLong(parts[1]) : -1;
+    switch (parts[0]){
+      case "random":
+        return RandomPlayer::new;
+      case "alphabeta":
+        long millis = value > 0 ? value : 10;
+        return () -> new AlphaBetaSearch(16, millis);
+      case "parallel":
+        long parallelMillis = value > 0 ? value : 10;
+        return () -> new ParallelSearch(2, 16, parallelMillis);
+      case "mcts":
+        long playouts = value > 0 ? value : 1000;
+        return () -> new MonteCarloSearch(1, 1000, playouts);
+      case "tablebase":
+        Tablebase table = Tablebase.open(rows, columns, wins);
+        if (table == null){
+          throw new IllegalArgumentException("No tablebase file: " + Tablebase.defaultFile(rows, columns, wins));
+        }
+        //the table is read-only, every thread can share it.
+        return () -> table;
+      default:
+        throw new IllegalArgumentException("Unknown player: " + spec);
+    }
+  }
+
+  /**
+   * Adds a player to the tournament.
+   *
+   * @param name the name of the player in the report
+   * @param factory creates an instance of the player for each thread
+   */
+  public void add(String name, Supplier<Player> factory) {
+    this.names.add(name);
+    this.factories.add(factory);
+  }
+
+  /**
+   * Plays every game of the tournament.
+   *
+   * @param threads the number of threads playing games
+   * @return the number of games played
+   * @throws RuntimeException the first exception thrown by a player,
+   *         which may also be an Error
+   */
+  public long run(int threads) {
+    int numPlayers = this.names.size();
+    List<int[]> pairs = new ArrayList<int[]>();
+    for (int a = 0; a < numPlayers; a++){
+      for (int b = a + 1; b < numPlayers; b++){
+        if (this.format == Format.ROUND_ROBIN || a == 0){
+          pairs.add(new int[] { a, b });
+        }
+      }
+    }
+    this.pairings = pairs.toArray(new int[pairs.size()][]);
+    this.results = new AtomicLongArray(3 * this.pairings.length);
+    long total = this.gamesPerPairing * this.pairings.length;
+
+    long start = System.nanoTime();
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++){
+      workers[t] = new Thread(() -> {
+        try {
+          play(total);
+        } catch (RuntimeException | Error e) {
+          //the other threads stop after their current batch.
+          this.failure.compareAndSet(null, e);
+          this.nextGame.set(total);
+        }
+      }, "tournament-" + t);
+      workers[t].start();
+    }
+    long lastReport = start;
+    for (Thread worker : workers){
+      while (worker.isAlive()){
+        try {
+          worker.join(1000);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return gamesPlayed();
+        }
+        //long runs print their progress every ten seconds.
+        long now = System.nanoTime();
+        if (now - lastReport > 10_000_000_000L){
+          lastReport = now;
+          long played = gamesPlayed();
+          System.err.printf("%d/%d games, %.0f games/s%n", played, total, played / ((now - start) / 1e9));
+        }
+      }
+    }
+    this.elapsedNanos = System.nanoTime() - start;
+    Throwable failed = this.failure.get();
+    if (failed instanceof RuntimeException){
+      throw (RuntimeException) failed;
+    }
+    if (failed instanceof Error){
+      throw (Error) failed;
+    }
+    return gamesPlayed();
+  }
+
+  /**
+   * The loop of a thread: batches of games until there are none left.
+   */
+  private void play(long total) {
+    Player[] players = new Player[this.factories.size()];
+    long[] counts = new long[this.results.length()];
+    TicTacToe game = new TicTacToe(this.numRows, this.numColumns, this.sizeToWin);
+    GameView view = game.readOnlyView();
+    try {
+      while (true){
+        long first = this.nextGame.getAndAdd(BATCH);
+        if (first >= total){
+          return;
+        }
+        long last = Math.min(first + BATCH, total);
+        for (long g = first; g < last; g++){
+          int pairing = (int) (g / this.gamesPerPairing);
+          int a = this.pairings[pairing][0];
+          int b = this.pairings[pairing][1];
+          for (int p : this.pairings[pairing]){
+            if (players[p] == null){
+              players[p] = this.factories.get(p).get();
+            }
+          }
+          //the first player of the pairing is X in even games.
+          boolean aIsX = g % 2 == 0;
+          GameState state = playGame(game, view, aIsX ? players[a] : players[b], aIsX ? players[b] : players[a]);
+          int result;
+          if (state == GameState.DRAW){
+            result = DRAWS;
+          } else {
+            result = (state == GameState.XWIN) == aIsX ? WINS : LOSSES;
+          }
+          counts[3 * pairing + result] += 1;
+        }
+        for (int i = 0; i < counts.length; i++){
+          if (counts[i] != 0){
+            this.results.addAndGet(i, counts[i]);
+            counts[i] = 0;
+          }
+        }
+      }
+    } finally {
+      for (Player player : players){
+        if (player != null){
+          player.shutdown();
+        }
+      }
+    }
+  }
+
+  /**
+   * Plays a game to its end, on the game of the thread reset.
+   * The players only see the game through its read-only view.
+   *
+   * @return XWIN, OWIN or DRAW; a player who plays an
+   *         illegal move loses
+   */
+  private GameState playGame(TicTacToe game, GameView view, Player x, Player o) {
+    game.reset();
+    while (game.gameState == GameState.PLAYING){
+      CellValue next = game.nextPlayer();
+      int position = (next == CellValue.X ? x : o).bestMove(view);
+      if (!game.tryPlay(position).isAccepted()){
+        return next == CellValue.X ? GameState.OWIN : GameState.XWIN;
+      }
+    }
+    return game.gameState;
+  }
+
+  /**
+   * The number of games whose result is counted.
+   */
+  public long gamesPlayed() {
+    long played = 0;
+    for (int i = 0; i < this.results.length(); i++){
+      played += this.results.get(i);
+    }
+    return played;
+  }
+
+  /**
+   * The results of the tournament: each pairing, then each player
+   * against the field, then the speed.
+   */
+  public String report() {
+    StringBuilder out = new StringBuilder();
+    out.append(this.numRows).append('x').append(this.numColumns).append('/').append(this.sizeToWin)
+      .append(' ').append(this.format).append(", ").append(this.gamesPerPairing).append(" games per pairing\n");
+    int numPlayers = this.names.size();
+    long[][] field = new long[numPlayers][3];
+    for (int p = 0; p < this.pairings.length; p++){
+      int a = this.pairings[p][0];
+      int b = this.pairings[p][1];
+      long w = this.results.get(3 * p + WINS);
+      long d = this.results.get(3 * p + DRAWS);
+      long l = this.results.get(3 * p + LOSSES);
+      appendLine(out, this.names.get(a) + " vs " + this.names.get(b), w, d, l);
+      field[a][WINS] += w;
+      field[a][DRAWS] += d;
+      field[a][LOSSES] += l;
+      field[b][WINS] += l;
+      field[b][DRAWS] += d;
+      field[b][LOSSES] += w;
+    }
+    out.append("against the field:\n");
+    for (int a = 0; a < numPlayers; a++){
+      appendLine(out, this.names.get(a), field[a][WINS], field[a][DRAWS], field[a][LOSSES]);
+    }
+    long played = gamesPlayed();
+    out.append(String.format("%d games in %.2f s, %.0f games/s%n", played, this.elapsedNanos / 1e9,
+      played / Math.max(this.elapsedNanos / 1e9, 1e-9)));
+    return out.toString();
+  }
+
+  /**
+   * Appends "name: W-D-L, score, Elo [low, high]".
+   */
+  private static void appendLine(StringBuilder out, String name, long w, long d, long l) {
+    long n = w + d + l;
+    if (n == 0){
+      out.append("  ").append(name).append(": no games\n");
+      return;
+    }
+    double score = (w + 0.5 * d) / n;
+    //the standard error of the score of a game, from the variance of the observed results.
+    double variance = (w * sq(1 - score) + d * sq(0.5 - score) + l * sq(score)) / n;
+    double margin = 1.96 * Math.sqrt(variance / n);
+    out.append(String.format("  %s: +%d =%d -%d, score %.1f%%, Elo %s [%s, %s]%n", name, w, d, l,
+      100 * score, formatElo(elo(score)), formatElo(elo(score - margin)), formatElo(elo(score + margin))));
+  }
+
+  /**
+   * An Elo difference as a signed integer, or "+unbounded" and
+   * "-unbounded" for the infinite differences of a score of 100%
+   * and 0%.
+   */
+  static String formatElo(double elo) {
+    if (Double.isInfinite(elo)){
+      return elo > 0 ? "+unbounded" : "-unbounded";
+    }
+    return String.format("%+.0f", elo);
+  }
+
+  private static double sq(double x) {
+    return x * x;
+  }
+
+  /**
+   * The Elo difference of a player expected to score the provided
+   * fraction of the points, infinite for 0 or 1.
+   */
+  static double elo(double score) {
+    if (score <= 0){
+      return Double.NEGATIVE_INFINITY;
+    }
+    if (score >= 1){
+      return Double.POSITIVE_INFINITY;
+    }
+    return 400 * Math.log10(score / (1 - score));
+  }
+}